@@ -0,0 +1,252 @@
+/*
+ * Copyright 2021 Yuan Yao
+ * University of Nottingham
+ * Zhejiang University of Technology
+ * Email: yaoyuan@zjut.edu.cn (yuanyao1990yy@icloud.com)
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details
+ *  <http://www.gnu.org/licenses/gpl-3.0.html>.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uno.gpt.generators;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.function.LongSupplier;
+
+import uno.gpt.simulator.RandomPolicy;
+import uno.gpt.simulator.Simulation;
+import uno.gpt.structure.*;
+
+/**
+ * @version 1.0
+ *
+ * Throughput benchmarks for environment generation, tree generation, XML output and random rollouts of the simulator,
+ * run over a grid of generator parameters. Each benchmark is run for a number of timed warm-up iterations, then
+ * measured; the score is the number of nodes (literals for the environment, steps for the simulator) produced per
+ * second, and the allocation rate is read from the allocation
+ * counter of the benchmark thread, like the GC profiler of JMH does.
+ *
+ * Every flag takes a comma-separated list of values and the grid is their cartesian product:
+ * -d depth, -g goals, -p plans, -a actions, -v variables, -e selected variables, -l leaf probability,
+ * -t trees written per XML operation, -w warm-up iterations, -i measured iterations, -r seconds per iteration,
+ * -b benchmarks among env, tree, xml, jdom, sim.
+ */
+class GeneratorBenchmark
+{
+	/** allocation counter of the current thread */
+	private static final com.sun.management.ThreadMXBean threads =
+			(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+	/** grid of parameters */
+	private int[] depths = {3, 5}, goals = {3}, plans = {3}, actions = {3}, vars = {60, 1000}, selected = {30};
+	private double[] probs = {0d, 0.3};
+
+	/** number of trees in the forest written by the XML benchmarks */
+	private int trees = 10;
+
+	/** iterations */
+	private int warmup = 3, measure = 5;
+
+	/** nanoseconds per iteration */
+	private long iterationTime = 1_000_000_000L;
+
+	/** benchmarks to run */
+	private String[] benchmarks = {"env", "tree", "xml", "jdom"};
+
+	public static void main(String[] args) throws IOException
+	{
+		GeneratorBenchmark bench = new GeneratorBenchmark();
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			String v = args[i + 1];
+			switch (args[i]) {
+				case "-d": bench.depths = ints(v); break;
+				case "-g": bench.goals = ints(v); break;
+				case "-p": bench.plans = ints(v); break;
+				case "-a": bench.actions = ints(v); break;
+				case "-v": bench.vars = ints(v); break;
+				case "-e": bench.selected = ints(v); break;
+				case "-l": bench.probs = doubles(v); break;
+				case "-t": bench.trees = Integer.parseInt(v); break;
+				case "-w": bench.warmup = Integer.parseInt(v); break;
+				case "-i": bench.measure = Integer.parseInt(v); break;
+				case "-r": bench.iterationTime = (long) (Double.parseDouble(v) * 1e9); break;
+				case "-b": bench.benchmarks = v.split(","); break;
+				default:
+					System.out.println(args[i] + " is not a valid flag");
+					System.exit(1);
+			}
+		}
+		bench.run();
+	}
+
+	private void run() throws IOException
+	{
+		System.out.printf("%-6s %-42s %16s %12s %12s %10s%n",
+				"Bench", "(d,g,p,a,v,e,l)", "nodes/s", "+-", "alloc MB/s", "B/node");
+		for (int d : depths) for (int g : goals) for (int p : plans) for (int a : actions)
+		for (int v : vars) for (int e : selected) for (double l : probs) {
+			if (e > v) {
+				continue;
+			}
+			String params = String.format(Locale.ROOT, "(%d,%d,%d,%d,%d,%d,%.2f)", d, g, p, a, v, e, l);
+			for (String b : benchmarks) {
+				LongSupplier op = operation(b, d, g, p, a, v, e, l);
+				report(b, params, op);
+			}
+		}
+	}
+
+	/**
+	 * @return an operation returning the number of nodes it produced
+	 */
+	private LongSupplier operation(String benchmark, int d, int g, int p, int a, int v, int e, double l)
+			throws IOException
+	{
+		SynthGenerator gen = new SynthGenerator(AbstractGenerator.def_seed, d, trees, g, p, a, v, e, l, false);
+		LiteralTable environment = gen.genEnvironment();
+		switch (benchmark) {
+			case "env":
+				return () -> gen.genEnvironment().size();
+			case "tree":
+				int[] index = {0};
+				return () -> countNodes(gen.genTopLevelGoal(index[0]++ % trees));
+			case "xml":
+			case "jdom":
+				ArrayList<GoalNode> forest = new ArrayList<>();
+				long nodes = 0;
+				for (int k = 0; k < trees; k++) {
+					forest.add(gen.genTopLevelGoal(k));
+					nodes += countNodes(forest.get(k));
+				}
+				long total = nodes;
+				File out = File.createTempFile("gpt-bench", ".xml");
+				out.deleteOnExit();
+				if (benchmark.equals("xml")) {
+					return () -> {
+						StreamingXMLWriter.CreateXML(environment, forest, out.getPath());
+						return total;
+					};
+				}
+				XMLWriter writer = new XMLWriter();
+				return () -> {
+					writer.CreateXML(environment, forest, out.getPath());
+					return total;
+				};
+			case "sim":
+				ArrayList<GoalNode> intentions = new ArrayList<>();
+				for (int k = 0; k < trees; k++) {
+					intentions.add(gen.genTopLevelGoal(k));
+				}
+				Simulation simulation = new Simulation(environment, intentions);
+				Simulation.Snapshot start = simulation.snapshot();
+				long[] rollout = {0};
+				return () -> {
+					simulation.restore(start);
+					return simulation.run(new RandomPolicy(rollout[0]++), Long.MAX_VALUE);
+				};
+			default:
+				throw new IllegalArgumentException("Unknown benchmark " + benchmark);
+		}
+	}
+
+	/**
+	 * run the warm-up and measured iterations of an operation and print the result
+	 */
+	private void report(String benchmark, String params, LongSupplier op)
+	{
+		for (int i = 0; i < warmup; i++) {
+			iteration(op);
+		}
+		double[] rates = new double[measure];
+		double allocated = 0, nodes = 0, seconds = 0;
+		for (int i = 0; i < measure; i++) {
+			double[] r = iteration(op);
+			rates[i] = r[0] / r[2];
+			nodes += r[0];
+			allocated += r[1];
+			seconds += r[2];
+		}
+		double mean = nodes / seconds, var = 0;
+		for (double rate : rates) {
+			var += (rate - mean) * (rate - mean);
+		}
+		double error = measure > 1 ? Math.sqrt(var / (measure - 1)) : Double.NaN;
+		System.out.printf(Locale.ROOT, "%-6s %-42s %16.1f %12.1f %12.1f %10.1f%n", benchmark, params, mean, error,
+				allocated / seconds / (1 << 20), allocated / nodes);
+	}
+
+	/**
+	 * run an operation repeatedly for one iteration
+	 * @return the number of nodes, the bytes allocated and the elapsed seconds
+	 */
+	private double[] iteration(LongSupplier op)
+	{
+		// the standard output is only used by the writers' success message
+		java.io.PrintStream stdout = System.out;
+		System.setOut(new java.io.PrintStream(java.io.OutputStream.nullOutputStream()));
+		try {
+			long nodes = 0;
+			long bytes = threads.getCurrentThreadAllocatedBytes();
+			long start = System.nanoTime(), now;
+			do {
+				nodes += op.getAsLong();
+				now = System.nanoTime();
+			} while (now - start < iterationTime);
+			bytes = threads.getCurrentThreadAllocatedBytes() - bytes;
+			return new double[]{nodes, bytes, (now - start) / 1e9};
+		}
+		finally {
+			System.setOut(stdout);
+		}
+	}
+
+	/**
+	 * @return the number of goals, plans and actions in a tree
+	 */
+	static long countNodes(GoalNode goal)
+	{
+		long count = 1;
+		for (PlanNode plan : goal.getPlans()) {
+			count++;
+			for (Node step : plan.getPlanBody()) {
+				count += step instanceof GoalNode ? countNodes((GoalNode) step) : 1;
+			}
+		}
+		return count;
+	}
+
+	private static int[] ints(String v)
+	{
+		String[] parts = v.split(",");
+		int[] result = new int[parts.length];
+		for (int i = 0; i < parts.length; i++) {
+			result[i] = Integer.parseInt(parts[i].trim());
+		}
+		return result;
+	}
+
+	private static double[] doubles(String v)
+	{
+		String[] parts = v.split(",");
+		double[] result = new double[parts.length];
+		for (int i = 0; i < parts.length; i++) {
+			result[i] = Double.parseDouble(parts[i].trim());
+		}
+		return result;
+	}
+}
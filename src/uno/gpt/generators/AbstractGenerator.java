@@ -1,29 +1,23 @@
 package uno.gpt.generators;
 
 import uno.gpt.structure.Literal;
-
-import java.util.HashMap;
+import uno.gpt.structure.LiteralTable;
 
 abstract class AbstractGenerator implements GPTGenerator {
     /** Default values */
     static final int def_seed = 100, def_num_tree = 10;
 
     /** environment */
-    HashMap<String, Literal> environment;
+    LiteralTable environment;
 
     /**
-     * Helper function to find, copy, set and return a literal
+     * Helper function to find the canonical literal of a variable with a given state
      * @param id The Literal's id as a string
      * @param state The desired state
      * @return The Literal produced
      */
     Literal produceLiteral(String id, boolean state){
-        // Find and copy
-        Literal workingLiteral = environment.get(id).clone();
-        // Set state
-        workingLiteral.setState(state);
-        // Return
-        return workingLiteral;
+        return environment.get(id, state);
     }
 
 }
@@ -0,0 +1,322 @@
+/*
+ * Copyright 2021 Yuan Yao
+ * University of Nottingham
+ * Zhejiang University of Technology
+ * Email: yaoyuan@zjut.edu.cn (yuanyao1990yy@icloud.com)
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details
+ *  <http://www.gnu.org/licenses/gpl-3.0.html>.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uno.gpt.generators;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+
+import uno.gpt.structure.*;
+
+/**
+ * @version 1.0
+ *
+ * Reads a forest written by {@link BinaryForestWriter}. The file is memory-mapped and the environment is decoded when
+ * the reader is opened; goal-plan trees are returned as views which decode the conditions and the children of a node
+ * the first time they are asked for, so loading a forest costs nothing until its nodes are visited.
+ */
+public class BinaryForestReader implements Closeable
+{
+	/** size of a mapped segment, segments are aligned so that no int crosses two of them */
+	private static final int SEGMENT_BITS = 30;
+
+	/** the mapped file */
+	final private FileChannel channel;
+
+	/** the mapped segments */
+	final private MappedByteBuffer[] segments;
+
+	/** the environment */
+	final private LiteralTable environment;
+
+	/** number of trees */
+	final private int treeCount;
+
+	/** position of the tree table */
+	final private long treeTable;
+
+	private BinaryForestReader(FileChannel channel) throws IOException
+	{
+		this.channel = channel;
+		long size = channel.size();
+		int count = (int) ((size + (1L << SEGMENT_BITS) - 1) >>> SEGMENT_BITS);
+		this.segments = new MappedByteBuffer[count];
+		for (int i = 0; i < count; i++) {
+			long start = (long) i << SEGMENT_BITS;
+			segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(1L << SEGMENT_BITS, size - start));
+			segments[i].order(ByteOrder.LITTLE_ENDIAN);
+		}
+		if (size < 8 || getInt(0) != BinaryForestWriter.MAGIC) {
+			throw new IOException("Not a binary forest file");
+		}
+		int version = getInt(4);
+		if (version != 1 && version != BinaryForestWriter.VERSION) {
+			throw new IOException("Unsupported binary forest version " + version);
+		}
+		if (size < (version == 1 ? 24 : BinaryForestWriter.HEADER_SIZE)) {
+			throw new IOException("Not a binary forest file");
+		}
+		int varCount = getInt(8);
+		this.treeCount = getInt(12);
+		this.treeTable = getLong(16);
+		// decode the environment, which follows the shorter header of version 1
+		this.environment = new LiteralTable();
+		long pos = version == 1 ? 24 : getLong(24);
+		for (int i = 0; i < varCount; i++) {
+			boolean state = getInt(pos) != 0;
+			environment.add(getName(pos + 4), state);
+			pos = skipName(pos + 4);
+		}
+	}
+
+	/**
+	 * Open and map a binary forest file
+	 * @param path The file to read
+	 * @return The reader
+	 */
+	public static BinaryForestReader open(String path) throws IOException
+	{
+		FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ);
+		try {
+			return new BinaryForestReader(channel);
+		}
+		catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/** @return the environment */
+	public LiteralTable getEnvironment()
+	{
+		return environment;
+	}
+
+	/** @return the number of trees */
+	public int getTreeCount()
+	{
+		return treeCount;
+	}
+
+	/**
+	 * @param index The index of a tree
+	 * @return a lazy view of the top-level goal of the tree
+	 */
+	public GoalNode getTree(int index)
+	{
+		if (index < 0 || index >= treeCount) {
+			throw new IndexOutOfBoundsException("Tree " + index + " out of " + treeCount);
+		}
+		return (GoalNode) node(position(getInt(treeTable + 4L * index)));
+	}
+
+	/**
+	 * @return lazy views of all the top-level goals
+	 */
+	public ArrayList<GoalNode> getTrees()
+	{
+		ArrayList<GoalNode> trees = new ArrayList<>(treeCount);
+		for (int i = 0; i < treeCount; i++) {
+			trees.add(getTree(i));
+		}
+		return trees;
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		channel.close();
+	}
+
+	/**
+	 * create the view of the node whose record starts at a position
+	 */
+	private Node node(long pos)
+	{
+		String name = getName(pos + 4);
+		long body = skipName(pos + 4);
+		switch (getInt(pos)) {
+			case BinaryForestWriter.GOAL: return new Goal(name, body);
+			case BinaryForestWriter.PLAN: return new Plan(name, body);
+			case BinaryForestWriter.ACTION: return action(name, body);
+			default: throw new IllegalStateException("Corrupted record at " + pos);
+		}
+	}
+
+	/** actions are leaves and small, they are decoded at once */
+	private ActionNode action(String name, long pos)
+	{
+		return new ActionNode(name, condition(pos), condition(skipCondition(pos)));
+	}
+
+	/** decode the condition at a position, as a condition of the environment */
+	private Condition condition(long pos)
+	{
+		int size = getInt(pos);
+		ArrayList<Literal> result = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			int code = getInt(pos + 4 + 4L * i);
+			result.add(environment.get(code >>> 1, (code & 1) == 1));
+		}
+		return environment.condition(result);
+	}
+
+	private long skipCondition(long pos)
+	{
+		return pos + 4 + 4L * getInt(pos);
+	}
+
+	/** create the views of the children listed at a position */
+	private ArrayList<Node> children(long pos)
+	{
+		int size = getInt(pos);
+		ArrayList<Node> result = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			result.add(node(position(getInt(pos + 4 + 4L * i))));
+		}
+		return result;
+	}
+
+	private static long position(int ref)
+	{
+		return (ref & 0xFFFFFFFFL) << 2;
+	}
+
+	private int getInt(long pos)
+	{
+		return segments[(int) (pos >>> SEGMENT_BITS)].getInt((int) (pos & ((1 << SEGMENT_BITS) - 1)));
+	}
+
+	private long getLong(long pos)
+	{
+		return getInt(pos) & 0xFFFFFFFFL | (long) getInt(pos + 4) << 32;
+	}
+
+	private byte getByte(long pos)
+	{
+		return segments[(int) (pos >>> SEGMENT_BITS)].get((int) (pos & ((1 << SEGMENT_BITS) - 1)));
+	}
+
+	private String getName(long pos)
+	{
+		byte[] bytes = new byte[getInt(pos)];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = getByte(pos + 4 + i);
+		}
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private long skipName(long pos)
+	{
+		return pos + 4 + ((getInt(pos) + 3) & ~3);
+	}
+
+	/**
+	 * A goal whose goal-condition and plans are decoded on first access
+	 */
+	private class Goal extends GoalNode
+	{
+		/** position of the goal-condition, 0 once decoded */
+		private long pos;
+
+		/** the goal-condition, once decoded */
+		private Condition goalConds;
+
+		Goal(String name, long pos)
+		{
+			super(name);
+			this.pos = pos;
+		}
+
+		private synchronized void load()
+		{
+			if (pos != 0) {
+				goalConds = condition(pos);
+				for (Node plan : children(skipCondition(pos))) {
+					super.getPlans().add((PlanNode) plan);
+				}
+				pos = 0;
+			}
+		}
+
+		@Override
+		public ArrayList<PlanNode> getPlans()
+		{
+			load();
+			return super.getPlans();
+		}
+
+		@Override
+		public Condition getGoalConds()
+		{
+			load();
+			return goalConds;
+		}
+	}
+
+	/**
+	 * A plan whose precondition and body are decoded on first access
+	 */
+	private class Plan extends PlanNode
+	{
+		/** position of the precondition, 0 once decoded */
+		private long pos;
+
+		/** the precondition, once decoded */
+		private Condition pre;
+
+		Plan(String name, long pos)
+		{
+			super(name);
+			this.pos = pos;
+		}
+
+		private synchronized void load()
+		{
+			if (pos != 0) {
+				pre = condition(pos);
+				super.getPlanBody().addAll(children(skipCondition(pos)));
+				pos = 0;
+			}
+		}
+
+		@Override
+		public Condition getPre()
+		{
+			load();
+			return pre;
+		}
+
+		@Override
+		public ArrayList<Node> getPlanBody()
+		{
+			load();
+			return super.getPlanBody();
+		}
+	}
+}
@@ -0,0 +1,622 @@
+/*
+ * Copyright 2021 Yuan Yao
+ * University of Nottingham
+ * Zhejiang University of Technology
+ * Email: yaoyuan@zjut.edu.cn (yuanyao1990yy@icloud.com)
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details
+ *  <http://www.gnu.org/licenses/gpl-3.0.html>.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uno.gpt.generators;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import uno.gpt.structure.*;
+
+/**
+ * @version 1.0
+ *
+ * Writes the environment and the GPT forest in a compact binary format, read back by {@link BinaryForestReader}.
+ *
+ * The file is a sequence of little-endian ints, every record starting on a 4-byte boundary:
+ * <pre>
+ * header      magic "GPTB", version, number of variables, number of trees, tree table position (long),
+ *             environment position (long)
+ * environment for each variable, by index: initial value (0/1), name
+ * nodes       goal:   0, name, goal-condition, number of plans, plan references
+ *             plan:   1, name, precondition, number of steps, step references
+ *             action: 2, name, precondition, postcondition
+ * tree table  for each tree, the reference of its top-level goal
+ * </pre>
+ * A name is its UTF-8 length followed by its bytes, padded to 4 bytes. A condition is its number of literals followed
+ * by their codes, variable index * 2 + (1 if the literal is true). A reference is the position of a record divided by
+ * 4, as an unsigned int, so files up to 16 GiB can be addressed; writing a node past that limit fails with an
+ * IOException rather than producing references which wrap around. Nodes are written children first, so a file is
+ * written in a single pass.
+ *
+ * The environment and the tree table are found from the header, so trees can be appended to a file (see
+ * {@link #append(String)}): the new nodes, the whole environment and the whole tree table are written after the end
+ * of the file, and the header is updated last. Version 1 files, whose header ends with the tree table position and
+ * is followed by the environment, are still read.
+ */
+class BinaryForestWriter implements ForestWriter
+{
+	static final int MAGIC = 0x42545047, VERSION = 2, HEADER_SIZE = 32;
+
+	static final int GOAL = 0, PLAN = 1, ACTION = 2;
+
+	/** largest reference, that of the last 4 bytes of a 16 GiB file */
+	static final long MAX_REFERENCE = 0xFFFFFFFFL;
+
+	/** the file to write to, null when a goal is encoded in the buffer apart from the file */
+	final private FileChannel channel;
+
+	/** the output buffer */
+	private ByteBuffer buffer;
+
+	/** position in the file of the start of the buffer */
+	private long flushed;
+
+	/** the environment the literals of the forest come from */
+	private LiteralTable environment;
+
+	/** position of the environment in the file */
+	private long environmentPos;
+
+	/** whether trees are appended to an existing file, whose header is then left in place */
+	private boolean appending;
+
+	/** the size of the file when it was opened, which it is truncated back to if the writer is aborted */
+	private long start;
+
+	/** whether the writer has been aborted */
+	private boolean aborted;
+
+	/** the name of a node being rendered from its identity */
+	final private byte[] name = new byte[NodeId.MAX_LENGTH];
+
+	/** positions of the references to records written, null unless a goal is being encoded apart from the file */
+	private int[] references;
+
+	/** number of positions of references */
+	private int referenceCount;
+
+	/** references of the top-level goals written so far */
+	private int[] trees = new int[16];
+
+	/** number of top-level goals written so far */
+	private int treeCount;
+
+	BinaryForestWriter(FileChannel channel)
+	{
+		this(channel, StreamingXMLWriter.def_buffer_size);
+	}
+
+	private BinaryForestWriter(FileChannel channel, int bufferSize)
+	{
+		this.channel = channel;
+		this.buffer = ByteBuffer.allocate(bufferSize).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	/**
+	 * Open a writer on a file, the file is truncated if it exists
+	 * @param path The file to write to
+	 * @return The writer
+	 */
+	static BinaryForestWriter open(String path) throws IOException
+	{
+		return new BinaryForestWriter(FileChannel.open(Paths.get(path), StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE));
+	}
+
+	/**
+	 * Open a writer adding trees to a file. The environment written must start with the variables of the file, in
+	 * the same order, so that the nodes already written keep their meaning; the file is only changed, apart from its
+	 * end, once the writer is closed.
+	 * @param path The file to add trees to
+	 * @return The writer
+	 */
+	static BinaryForestWriter append(String path) throws IOException
+	{
+		FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			if (!BlockGzipIndex.readFully(channel, header, 0) || header.getInt(0) != MAGIC) {
+				throw new IOException("Not a binary forest file");
+			}
+			if (header.getInt(4) != VERSION) {
+				throw new IOException("Only version " + VERSION + " binary forests can be appended to");
+			}
+			BinaryForestWriter writer = new BinaryForestWriter(channel);
+			writer.appending = true;
+			writer.treeCount = header.getInt(12);
+			writer.trees = new int[Math.max(16, writer.treeCount * 2)];
+			ByteBuffer table = ByteBuffer.allocate(4 * writer.treeCount).order(ByteOrder.LITTLE_ENDIAN);
+			long tablePos = header.getLong(16);
+			if (!BlockGzipIndex.readFully(channel, table, tablePos)) {
+				throw new IOException("The tree table is past the end of the file");
+			}
+			table.flip().asIntBuffer().get(writer.trees, 0, writer.treeCount);
+			// records are ints, so the end of the file is aligned
+			writer.flushed = writer.start = channel.size();
+			channel.position(writer.flushed);
+			return writer;
+		}
+		catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/** @return the number of trees written to the file, including those it had when it was opened */
+	int getTreeCount()
+	{
+		return treeCount;
+	}
+
+	/**
+	 * Write the environment and GPT forest
+	 * @param environment The environment
+	 * @param goalForests The GPT forest
+	 * @param path The file to write to
+	 */
+	static void CreateBinary(LiteralTable environment, List<GoalNode> goalForests, String path)
+	{
+		try (BinaryForestWriter writer = open(path))
+		{
+			try {
+				writer.writeEnvironment(environment);
+				for (GoalNode gl : goalForests) {
+					writer.writeGoal(gl);
+				}
+			}
+			catch (IOException | RuntimeException e) {
+				writer.abort();
+				throw e;
+			}
+			System.out.println("Binary File was created successfully!");
+		}
+		catch(IOException ex)
+		{
+			ex.printStackTrace();
+		}
+	}
+
+	/**
+	 * write the header and the environment
+	 * @param environment The environment, the literals of the forest must come from it
+	 */
+	@Override
+	public void writeEnvironment(LiteralTable environment) throws IOException
+	{
+		if (this.environment != null) {
+			throw new IllegalStateException("The environment has already been written");
+		}
+		this.environment = environment;
+		if (!appending) {
+			// the magic number, the counts and the positions are filled in on close, so that a file which is not
+			// closed normally is not taken for a forest
+			putInt(0);
+			putInt(VERSION);
+			putInt(0);
+			putInt(0);
+			putLong(0);
+			putLong(0);
+		}
+		environmentPos = position();
+		for (int i = 0; i < environment.size(); i++) {
+			putInt(environment.getInitialState(i) ? 1 : 0);
+			putName(environment.getId(i));
+		}
+	}
+
+	/**
+	 * write a top-level goal
+	 * @param gl The goal
+	 */
+	@Override
+	public void writeGoal(GoalNode gl) throws IOException
+	{
+		if (environment == null) {
+			throw new IllegalStateException("The environment must be written before any goal");
+		}
+		addTree(goal(gl));
+	}
+
+	/**
+	 * @return a sink writing a top-level goal as its nodes are handed over, each goal and plan being written when
+	 * it ends, after its children
+	 */
+	@Override
+	public TreeSink treeSink()
+	{
+		return new Sink();
+	}
+
+	/**
+	 * encode a top-level goal apart from the file, its references being relative to the start of its bytes
+	 * @param gl The goal
+	 * @return the encoded goal
+	 */
+	@Override
+	public Encoded encode(GoalNode gl) throws IOException
+	{
+		if (environment == null) {
+			throw new IllegalStateException("The environment must be written before any goal");
+		}
+		BinaryForestWriter encoder = new BinaryForestWriter(null, StreamingXMLWriter.encoding_buffer_size);
+		encoder.environment = environment;
+		encoder.references = new int[16];
+		int root = encoder.goal(gl);
+		return new Encoded(encoder.buffer.array(), encoder.buffer.position(),
+				Arrays.copyOf(encoder.references, encoder.referenceCount), root);
+	}
+
+	/**
+	 * write a top-level goal encoded by {@link #encode(GoalNode)}, making its references absolute
+	 * @param goal The encoded goal
+	 */
+	@Override
+	public void writeEncoded(Encoded goal) throws IOException
+	{
+		if (environment == null) {
+			throw new IllegalStateException("The environment must be written before any goal");
+		}
+		int base = reference();
+		// the root is written last, so it has the largest reference of the goal
+		if ((base & MAX_REFERENCE) + goal.root > MAX_REFERENCE) {
+			throw new IOException("The forest is larger than the 16 GiB a binary file can address");
+		}
+		ByteBuffer bytes = ByteBuffer.wrap(goal.bytes, 0, goal.length).order(ByteOrder.LITTLE_ENDIAN);
+		for (int pos : goal.references) {
+			bytes.putInt(pos, bytes.getInt(pos) + base);
+		}
+		if (goal.length <= buffer.remaining()) {
+			buffer.put(bytes);
+		}
+		else {
+			flush();
+			while (bytes.hasRemaining()) {
+				flushed += channel.write(bytes);
+			}
+		}
+		addTree(goal.root + base);
+	}
+
+	private void addTree(int ref)
+	{
+		if (treeCount == trees.length) {
+			trees = java.util.Arrays.copyOf(trees, treeCount * 2);
+		}
+		trees[treeCount++] = ref;
+	}
+
+	/**
+	 * write a goal after its plans
+	 * @return the reference of the goal
+	 */
+	private int goal(GoalNode gl) throws IOException
+	{
+		ArrayList<PlanNode> plans = gl.getPlans();
+		int[] refs = new int[plans.size()];
+		for (int i = 0; i < refs.length; i++) {
+			refs[i] = plan(plans.get(i));
+		}
+		return record(GOAL, gl, gl.getGoalConds(), refs, refs.length);
+	}
+
+	/**
+	 * write a plan after its steps
+	 * @return the reference of the plan
+	 */
+	private int plan(PlanNode pl) throws IOException
+	{
+		ArrayList<Node> body = pl.getPlanBody();
+		int[] refs = new int[body.size()];
+		for (int i = 0; i < refs.length; i++) {
+			Node step = body.get(i);
+			refs[i] = step instanceof GoalNode ? goal((GoalNode) step) : action((ActionNode) step);
+		}
+		return record(PLAN, pl, pl.getPre(), refs, refs.length);
+	}
+
+	/**
+	 * write the record of a goal or a plan
+	 * @param type GOAL or PLAN
+	 * @param node The node
+	 * @param condition The goal-condition or the precondition of the node
+	 * @param refs The references of the children, followed by unused entries
+	 * @param count The number of children
+	 * @return the reference of the node
+	 */
+	private int record(int type, Node node, List<Literal> condition, int[] refs, int count) throws IOException
+	{
+		int ref = reference();
+		putInt(type);
+		putName(node);
+		putCondition(condition);
+		putInt(count);
+		for (int i = 0; i < count; i++) {
+			if (references != null) {
+				if (referenceCount == references.length) {
+					references = Arrays.copyOf(references, referenceCount * 2);
+				}
+				references[referenceCount++] = (int) position();
+			}
+			putInt(refs[i]);
+		}
+		return ref;
+	}
+
+	/**
+	 * write an action
+	 * @return the reference of the action
+	 */
+	private int action(ActionNode act) throws IOException
+	{
+		int ref = reference();
+		putInt(ACTION);
+		putName(act);
+		putCondition(act.getPreC());
+		putCondition(act.getPostC());
+		return ref;
+	}
+
+	/**
+	 * give up the forest: on close, the file is truncated back to its size when it was opened, so a new file is left
+	 * empty and a file trees were appended to keeps its former forest
+	 */
+	@Override
+	public void abort()
+	{
+		aborted = true;
+	}
+
+	/**
+	 * write the tree table, fill in the header and close the file. When appending, the rest of the file is made
+	 * durable before the header, so the file holds either the former forest or the new one.
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		try {
+			if (aborted) {
+				channel.truncate(start);
+			}
+			else if (environment != null) {
+				long table = position();
+				for (int i = 0; i < treeCount; i++) {
+					putInt(trees[i]);
+				}
+				flush();
+				if (appending) {
+					channel.force(false);
+				}
+				ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+				header.putInt(MAGIC).putInt(VERSION).putInt(environment.size()).putInt(treeCount).putLong(table)
+						.putLong(environmentPos).flip();
+				// the magic number and the version of a file trees are appended to are already in place
+				if (appending) {
+					header.position(8);
+				}
+				while (header.hasRemaining()) {
+					channel.write(header, header.position());
+				}
+			}
+		}
+		finally {
+			channel.close();
+		}
+	}
+
+	/** @return the position in the file of the next byte written */
+	private long position()
+	{
+		return flushed + buffer.position();
+	}
+
+	/**
+	 * @return the reference of the next record
+	 * @throws IOException if the record is beyond the 16 GiB a reference can address
+	 */
+	private int reference() throws IOException
+	{
+		long ref = position() >>> 2;
+		if (ref > MAX_REFERENCE) {
+			throw new IOException("The forest is larger than the 16 GiB a binary file can address");
+		}
+		return (int) ref;
+	}
+
+	private void putCondition(List<Literal> st) throws IOException
+	{
+		int size = st == null ? 0 : st.size();
+		putInt(size);
+		for (int i = 0; i < size; i++) {
+			putInt(code(st.get(i)));
+		}
+	}
+
+	/**
+	 * @return the code of a literal, looked up by id if it is not a canonical literal of the environment
+	 */
+	private int code(Literal l)
+	{
+		int index = l.getIndex();
+		if (index < 0 || index >= environment.size() || environment.get(index, l.getState()) != l) {
+			index = environment.indexOf(l.getId());
+			if (index < 0) {
+				throw new IllegalArgumentException("Literal " + l.getId() + " is not in the environment");
+			}
+		}
+		return index << 1 | (l.getState() ? 1 : 0);
+	}
+
+	/**
+	 * write the name of a node, rendered straight into the buffer if the node has an identity
+	 */
+	private void putName(Node node) throws IOException
+	{
+		long id = node.getId();
+		if (id == NodeId.NONE) {
+			putName(node.getName());
+			return;
+		}
+		int length = NodeId.render(id, name, 0);
+		int padded = (length + 3) & ~3;
+		putInt(length);
+		ensure(padded);
+		buffer.put(name, 0, length);
+		for (int i = length; i < padded; i++) {
+			buffer.put((byte) 0);
+		}
+	}
+
+	private void putName(String name) throws IOException
+	{
+		byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+		putInt(bytes.length);
+		for (int i = 0; i < bytes.length; i += buffer.capacity()) {
+			int len = Math.min(buffer.capacity(), bytes.length - i);
+			ensure(len);
+			buffer.put(bytes, i, len);
+		}
+		// pad to the next int
+		for (int i = bytes.length; (i & 3) != 0; i++) {
+			ensure(1);
+			buffer.put((byte) 0);
+		}
+	}
+
+	private void putInt(int v) throws IOException
+	{
+		ensure(4);
+		buffer.putInt(v);
+	}
+
+	private void putLong(long v) throws IOException
+	{
+		ensure(8);
+		buffer.putLong(v);
+	}
+
+	private void ensure(int bytes) throws IOException
+	{
+		if (buffer.remaining() < bytes) {
+			if (channel == null) {
+				buffer = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes))
+						.order(ByteOrder.LITTLE_ENDIAN).put(buffer.flip());
+				return;
+			}
+			flush();
+		}
+	}
+
+	private void flush() throws IOException
+	{
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			flushed += channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	/**
+	 * Writes the nodes handed over by a generator, keeping only the references of the children of the open goals
+	 * and plans
+	 */
+	private class Sink implements TreeSink
+	{
+		/** references of the children written so far, one array per open goal or plan */
+		private int[][] refs = new int[16][];
+
+		/** number of children written so far, one count per open goal or plan */
+		private int[] counts = new int[16];
+
+		/** number of open goals and plans */
+		private int depth;
+
+		@Override
+		public void startGoal(GoalNode goal)
+		{
+			if (depth == 0 && environment == null) {
+				throw new IllegalStateException("The environment must be written before any goal");
+			}
+			open();
+		}
+
+		@Override
+		public void startPlan(PlanNode plan)
+		{
+			open();
+		}
+
+		@Override
+		public void action(ActionNode action) throws IOException
+		{
+			child(BinaryForestWriter.this.action(action));
+		}
+
+		@Override
+		public void endPlan(PlanNode plan) throws IOException
+		{
+			depth--;
+			child(record(PLAN, plan, plan.getPre(), refs[depth], counts[depth]));
+		}
+
+		@Override
+		public void endGoal(GoalNode goal) throws IOException
+		{
+			depth--;
+			int ref = record(GOAL, goal, goal.getGoalConds(), refs[depth], counts[depth]);
+			if (depth == 0) {
+				addTree(ref);
+			}
+			else {
+				child(ref);
+			}
+		}
+
+		private void open()
+		{
+			if (depth == refs.length) {
+				refs = java.util.Arrays.copyOf(refs, depth * 2);
+				counts = java.util.Arrays.copyOf(counts, depth * 2);
+			}
+			if (refs[depth] == null) {
+				refs[depth] = new int[4];
+			}
+			counts[depth++] = 0;
+		}
+
+		private void child(int ref)
+		{
+			int[] level = refs[depth - 1];
+			if (counts[depth - 1] == level.length) {
+				level = refs[depth - 1] = java.util.Arrays.copyOf(level, level.length * 2);
+			}
+			level[counts[depth - 1]++] = ref;
+		}
+	}
+}
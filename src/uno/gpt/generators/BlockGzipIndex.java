@@ -0,0 +1,172 @@
+/*
+ * Copyright 2021 Yuan Yao
+ * University of Nottingham
+ * Zhejiang University of Technology
+ * Email: yaoyuan@zjut.edu.cn (yuanyao1990yy@icloud.com)
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details
+ *  <http://www.gnu.org/licenses/gpl-3.0.html>.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uno.gpt.generators;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * @version 1.0
+ *
+ * The members of a gzip file written by {@link ParallelGzipChannel}, found from the sizes recorded in their headers,
+ * with the offset in the uncompressed data where each of them starts. A stream starting at any uncompressed offset is
+ * then opened by decompressing from the member containing it, instead of from the start of the file.
+ *
+ * Other gzip files can be read too: the members are indexed up to the first one without the size, and everything from
+ * there is treated as a single block.
+ */
+class BlockGzipIndex
+{
+	/** size of the buffers of the streams */
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	/** the compressed file */
+	final private FileChannel channel;
+
+	/** position in the file of each indexed member */
+	final private long[] members;
+
+	/** offset in the uncompressed data of the start of each indexed member */
+	final private long[] starts;
+
+	private BlockGzipIndex(FileChannel channel, long[] members, long[] starts)
+	{
+		this.channel = channel;
+		this.members = members;
+		this.starts = starts;
+	}
+
+	/**
+	 * @param channel A file
+	 * @return whether the file starts with the gzip magic number
+	 */
+	static boolean isCompressed(FileChannel channel) throws IOException
+	{
+		ByteBuffer magic = ByteBuffer.allocate(2);
+		return readFully(channel, magic, 0) && magic.get(0) == 0x1f && magic.get(1) == (byte) 0x8b;
+	}
+
+	/**
+	 * @param in A buffered stream, at the start of a file
+	 * @return a stream decompressing the file if it starts with the gzip magic number, the stream itself otherwise
+	 */
+	static InputStream decompressed(BufferedInputStream in) throws IOException
+	{
+		in.mark(2);
+		boolean compressed = in.read() == 0x1f && in.read() == 0x8b;
+		in.reset();
+		return compressed ? new GZIPInputStream(in, BUFFER_SIZE) : in;
+	}
+
+	/**
+	 * find the members of a gzip file
+	 * @param channel The file
+	 * @return The index of the file
+	 */
+	static BlockGzipIndex build(FileChannel channel) throws IOException
+	{
+		long size = channel.size();
+		long[] members = new long[16], starts = new long[16];
+		int count = 0;
+		ByteBuffer header = ByteBuffer.allocate(ParallelGzipChannel.HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		ByteBuffer trailer = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+		long pos = 0, start = 0;
+		while (pos < size) {
+			if (count == members.length) {
+				members = Arrays.copyOf(members, count * 2);
+				starts = Arrays.copyOf(starts, count * 2);
+			}
+			members[count] = pos;
+			starts[count++] = start;
+			if (!readFully(channel, header.clear(), pos) || header.getShort(0) != (short) 0x8b1f || header.get(2) != 8
+					|| (header.get(3) & 4) == 0 || (header.getShort(10) & 0xFFFF) < 8
+					|| header.get(12) != ParallelGzipChannel.SI1 || header.get(13) != ParallelGzipChannel.SI2
+					|| header.getShort(14) != 4) {
+				// not a member written by ParallelGzipChannel, the rest of the file is a single block
+				break;
+			}
+			long total = header.getInt(16) & 0xFFFFFFFFL;
+			if (total < ParallelGzipChannel.HEADER_SIZE + 8 || pos + total > size
+					|| !readFully(channel, trailer.clear(), pos + total - 4)) {
+				break;
+			}
+			start += trailer.getInt(0) & 0xFFFFFFFFL;
+			pos += total;
+		}
+		return new BlockGzipIndex(channel, Arrays.copyOf(members, count), Arrays.copyOf(starts, count));
+	}
+
+	/** @return the number of indexed members */
+	int getMemberCount()
+	{
+		return members.length;
+	}
+
+	/**
+	 * open a stream of the uncompressed data
+	 * @param offset The offset in the uncompressed data of the first byte of the stream
+	 * @return The stream, reading to the end of the file
+	 */
+	InputStream open(long offset) throws IOException
+	{
+		int i = Arrays.binarySearch(starts, offset);
+		if (i < 0) {
+			i = -i - 2;
+		}
+		// an empty member starts at the same offset as the next one, use the last one
+		while (i + 1 < starts.length && starts[i + 1] == offset) {
+			i++;
+		}
+		InputStream in = new GZIPInputStream(new BufferedInputStream(new ChannelInputStream(channel, members[i]),
+				BUFFER_SIZE), BUFFER_SIZE);
+		for (long skip = offset - starts[i]; skip > 0; ) {
+			long n = in.skip(skip);
+			if (n <= 0) {
+				in.close();
+				throw new EOFException("Offset " + offset + " is past the end of the data");
+			}
+			skip -= n;
+		}
+		return in;
+	}
+
+	/**
+	 * fill a buffer from a position of a file
+	 * @return false if the end of the file was reached before the buffer was full
+	 */
+	static boolean readFully(FileChannel channel, ByteBuffer buffer, long pos) throws IOException
+	{
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, pos + buffer.position()) < 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
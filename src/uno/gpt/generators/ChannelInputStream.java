@@ -0,0 +1,69 @@
+/*
+ * Copyright 2021 Yuan Yao
+ * University of Nottingham
+ * Zhejiang University of Technology
+ * Email: yaoyuan@zjut.edu.cn (yuanyao1990yy@icloud.com)
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details
+ *  <http://www.gnu.org/licenses/gpl-3.0.html>.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uno.gpt.generators;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * @version 1.0
+ *
+ * An input stream over a part of a file, using positional reads so that it does not move the channel and several
+ * streams can read the same channel concurrently
+ */
+class ChannelInputStream extends InputStream
+{
+	final private FileChannel channel;
+	private long position;
+
+	ChannelInputStream(FileChannel channel, long position)
+	{
+		this.channel = channel;
+		this.position = position;
+	}
+
+	@Override
+	public int read() throws IOException
+	{
+		byte[] b = new byte[1];
+		return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException
+	{
+		int n = channel.read(ByteBuffer.wrap(b, off, len), position);
+		if (n > 0) {
+			position += n;
+		}
+		return n;
+	}
+
+	/** @return the number of bytes to the end of the file, which tells a gzip stream that another member follows */
+	@Override
+	public int available() throws IOException
+	{
+		return (int) Math.min(Integer.MAX_VALUE, Math.max(0, channel.size() - position));
+	}
+}
@@ -0,0 +1,325 @@
+/*
+ * Copyright 2021 Yuan Yao
+ * University of Nottingham
+ * Zhejiang University of Technology
+ * Email: yaoyuan@zjut.edu.cn (yuanyao1990yy@icloud.com)
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details
+ *  <http://www.gnu.org/licenses/gpl-3.0.html>.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uno.gpt.generators;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import uno.gpt.structure.Literal;
+import uno.gpt.structure.LiteralTable;
+
+/**
+ * @version 1.0
+ *
+ * An ordered list of literals used while building plan bodies. The generator draws literals by position, so the
+ * order is kept in an array of literal codes (variable index * 2 + state), while two sets of variable indexes, one
+ * for each state, answer membership without scanning. The sets are {@link IntSet}s: a bitset while every index is
+ * below 4096, which is fastest for small environments, and a hash table once an index reaches it, so that copying a
+ * condition over a large environment costs the same whatever its number of variables.
+ *
+ * The update operations reproduce the list operations the generator used before, including their behaviour when a
+ * literal occurs more than once, so seeded output does not change.
+ */
+class ConditionSet
+{
+	/** the table the literals come from */
+	final private LiteralTable table;
+
+	/** the literal codes, in order */
+	private int[] codes;
+
+	/** number of literals */
+	private int size;
+
+	/** variables occurring with the state true, resp. false */
+	final private IntSet positive, negative;
+
+	/** codes that may occur more than once, they are never removed */
+	final private IntSet repeated;
+
+	ConditionSet(LiteralTable table)
+	{
+		this.table = table;
+		this.codes = new int[8];
+		this.positive = new IntSet();
+		this.negative = new IntSet();
+		this.repeated = new IntSet();
+	}
+
+	ConditionSet(LiteralTable table, List<Literal> literals)
+	{
+		this(table);
+		addAll(literals);
+	}
+
+	/** copy constructor */
+	ConditionSet(ConditionSet other)
+	{
+		this.table = other.table;
+		this.codes = Arrays.copyOf(other.codes, Math.max(other.size, 8));
+		this.size = other.size;
+		this.positive = new IntSet(other.positive);
+		this.negative = new IntSet(other.negative);
+		this.repeated = new IntSet(other.repeated);
+	}
+
+	private static int code(Literal l)
+	{
+		return l.getIndex() << 1 | (l.getState() ? 1 : 0);
+	}
+
+	private IntSet bits(int code)
+	{
+		return (code & 1) == 1 ? positive : negative;
+	}
+
+	int size()
+	{
+		return size;
+	}
+
+	boolean isEmpty()
+	{
+		return size == 0;
+	}
+
+	/**
+	 * @param i a position
+	 * @return the literal at this position
+	 */
+	Literal get(int i)
+	{
+		if (i >= size) {
+			throw new IndexOutOfBoundsException("Index " + i + " out of bounds for length " + size);
+		}
+		return table.get(codes[i] >> 1, (codes[i] & 1) == 1);
+	}
+
+	/**
+	 * @return whether the literal occurs
+	 */
+	boolean contains(Literal l)
+	{
+		return bits(code(l)).get(l.getIndex());
+	}
+
+	/**
+	 * @return whether the variable occurs, in either state
+	 */
+	boolean containsVariable(int index)
+	{
+		return positive.get(index) || negative.get(index);
+	}
+
+	/**
+	 * append a literal
+	 */
+	void add(Literal l)
+	{
+		int code = code(l);
+		IntSet bits = bits(code);
+		if (bits.get(l.getIndex())) {
+			repeated.set(code);
+		}
+		bits.set(l.getIndex());
+		if (size == codes.length) {
+			codes = Arrays.copyOf(codes, size * 2);
+		}
+		codes[size++] = code;
+	}
+
+	void addAll(List<Literal> literals)
+	{
+		for (Literal l : literals) {
+			add(l);
+		}
+	}
+
+	/**
+	 * @return the literals, in order
+	 */
+	ArrayList<Literal> toList()
+	{
+		ArrayList<Literal> result = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			result.add(get(i));
+		}
+		return result;
+	}
+
+	/**
+	 * remove the literal at a position
+	 */
+	private void removeAt(int i)
+	{
+		int code = codes[i];
+		System.arraycopy(codes, i + 1, codes, i, size - i - 1);
+		size--;
+		if (!repeated.get(code) || indexOf(code, 0) < 0) {
+			bits(code).clear(code >> 1);
+		}
+	}
+
+	/**
+	 * @return the first position at or after from holding the code, -1 if there is none
+	 */
+	private int indexOf(int code, int from)
+	{
+		for (int i = from; i < size; i++) {
+			if (codes[i] == code) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return the first position holding the variable, -1 if there is none
+	 */
+	private int indexOfVariable(int index)
+	{
+		for (int i = 0; i < size; i++) {
+			if (codes[i] >> 1 == index) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * remove the first occurrence of a literal
+	 * @return whether the literal was found
+	 */
+	boolean removeFirst(Literal l)
+	{
+		if (!contains(l)) {
+			return false;
+		}
+		removeAt(indexOf(code(l), 0));
+		return true;
+	}
+
+	/**
+	 * update the current state based on a literal l. If a literal l (or its negation) is in the list, then remove
+	 * the first one. Add l in the tail of this list
+	 */
+	void update(Literal l)
+	{
+		if (containsVariable(l.getIndex())) {
+			removeAt(indexOfVariable(l.getIndex()));
+		}
+		add(l);
+	}
+
+	/**
+	 * update the list of action literals once l has been achieved: remove l, then add its negation unless the
+	 * negation occurs before l, or a literal with the same state as l follows it
+	 * @param l a literal of the list
+	 */
+	void achieve(Literal l)
+	{
+		int code = code(l);
+		int first = indexOfVariable(l.getIndex());
+		// the position of l
+		int at = first >= 0 && codes[first] != code ? indexOf(code, first + 1) : first;
+		if (at >= 0) {
+			removeAt(at);
+		}
+		// its negation was found before it
+		if (first >= 0 && first != at) {
+			return;
+		}
+		for (int i = Math.max(at, 0); i < size; i++) {
+			if ((codes[i] & 1) == (code & 1)) {
+				return;
+			}
+		}
+		add(l.negate());
+	}
+
+	/**
+	 * remove all the literals whose variable occurs in one of the given literals. Variables occurring at most once
+	 * in each state are removed together in a single pass; a variable that may occur more often is removed the way
+	 * the former list-based version did, which can leave some of its occurrences behind.
+	 * @param ls the conflicting literals
+	 */
+	void removeConflicting(List<Literal> ls)
+	{
+		IntSet conflicting = new IntSet();
+		for (Literal l : ls) {
+			int index = l.getIndex();
+			if (!containsVariable(index) || conflicting.get(index)) {
+				continue;
+			}
+			if (repeated.get(index << 1) || repeated.get(index << 1 | 1)) {
+				removeVariables(conflicting);
+				conflicting.clear();
+				removeRepeatedVariable(index);
+			}
+			else {
+				conflicting.set(index);
+			}
+		}
+		removeVariables(conflicting);
+	}
+
+	/**
+	 * remove all the occurrences of a set of variables
+	 */
+	private void removeVariables(IntSet variables)
+	{
+		if (variables.isEmpty()) {
+			return;
+		}
+		int j = 0;
+		for (int i = 0; i < size; i++) {
+			if (!variables.get(codes[i] >> 1)) {
+				codes[j++] = codes[i];
+			}
+		}
+		size = j;
+		positive.removeAll(variables);
+		negative.removeAll(variables);
+	}
+
+	/**
+	 * remove the occurrences of a variable the way the former list-based version did: one pass that skips the
+	 * element following each removed one, then the first occurrence left after the last removal
+	 */
+	private void removeRepeatedVariable(int index)
+	{
+		int last = size;
+		for (int i = 0; i < size; i++) {
+			if (codes[i] >> 1 == index) {
+				removeAt(i);
+				last = i;
+			}
+		}
+		for (int i = last; i < size; i++) {
+			if (codes[i] >> 1 == index) {
+				removeAt(i);
+				break;
+			}
+		}
+	}
+}
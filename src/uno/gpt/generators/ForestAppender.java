@@ -0,0 +1,343 @@
+/*
+ * Copyright 2021 Yuan Yao
+ * University of Nottingham
+ * Zhejiang University of Technology
+ * Email: yaoyuan@zjut.edu.cn (yuanyao1990yy@icloud.com)
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details
+ *  <http://www.gnu.org/licenses/gpl-3.0.html>.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uno.gpt.generators;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import uno.gpt.structure.LiteralTable;
+
+/**
+ * @version 1.0
+ *
+ * Adds trees to a forest saved by {@link Main}, generating only the new ones. The trees must have their own random
+ * streams (see {@link SynthGenerator#genIndependentGoal(int)}), so that tree k is the same whether it is generated
+ * with the forest or added to it later; the number of trees is read from the file, the other parameters must be
+ * those the forest was generated with. They are saved by {@link Main} next to such a forest, in
+ * &lt;forest&gt;{@value #EXTENSION}, and trees are only added if the stream mode, the sampling mode, the format and
+ * every parameter of the generator match; the environment of the forest is checked as well.
+ *
+ * A binary forest is extended in place, the cost of adding trees being that of the new trees, plus the rewriting of
+ * its environment and tree table. The nodes already written refer to the variables by index, so the goal literals
+ * of the new trees are added after all the environment variables, where a forest generated at once has every goal
+ * literal before them: the result has the same variables, initial values and trees, but not the same indexes, nor
+ * the same bytes, as the forest generated at once.
+ *
+ * The environment of an XML forest comes before its trees, so the XML forest is written again, with its former
+ * trees copied as they are, without being parsed: the result is the same file as the forest generated at once with
+ * all the trees. The cost of adding trees to an XML forest is thus that of copying the whole file, on top of the
+ * new trees.
+ */
+class ForestAppender
+{
+	/** extension of the file holding the parameters of a forest, added to the path of the forest */
+	static final String EXTENSION = ".params.json";
+
+	/** a field of the parameters, with a string or a number value */
+	private static final Pattern FIELD = Pattern.compile("\"(\\w+)\"\\s*:\\s*(?:\"([^\"]*)\"|([-+.\\w]+))");
+
+	/** the parameters every tree depends on, which the trees added must be generated with */
+	private static final String[] TREE_PARAMETERS = {"streams", "sampling", "format", "seed", "depth", "goals",
+			"plans", "actions", "variables", "selected", "prob_leaf", "summary"};
+
+	/**
+	 * add trees to a forest
+	 * @param params The parameters of the forest, but for its number of trees
+	 * @param path The file of the forest, in XML or binary format
+	 * @param count The number of trees to add
+	 * @return the number of trees of the forest
+	 * @throws IllegalArgumentException if the forest cannot be extended with these parameters
+	 */
+	static int append(Parameters params, String path, int count) throws IOException
+	{
+		if (params.threads <= 0) {
+			throw new IllegalArgumentException("Trees can only be added to a forest generated with -j, "
+					+ "as the trees of a single random stream depend on all the trees before them");
+		}
+		if (params.metrics) {
+			throw new IllegalArgumentException("The metrics report is not available when adding trees");
+		}
+		if (count <= 0) {
+			throw new IllegalArgumentException("The number of trees to add must be greater than 0");
+		}
+		int magic;
+		try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ))
+		{
+			ByteBuffer head = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+			while (head.hasRemaining() && channel.read(head) >= 0) {
+			}
+			magic = head.position() == 4 ? head.getInt(0) : 0;
+		}
+		if (magic == BinaryForestWriter.MAGIC) {
+			return appendBinary(params, path, count);
+		}
+		if ((magic & 0xFFFF) == 0x8B1F) {
+			throw new IllegalArgumentException("Trees cannot be added to a compressed forest");
+		}
+		return appendXML(params, path, count);
+	}
+
+	private static int appendBinary(Parameters params, String path, int count) throws IOException
+	{
+		if (params.summaries) {
+			throw new IllegalArgumentException("The summary information can only be saved in the XML output");
+		}
+		LiteralTable environment;
+		int trees;
+		try (BinaryForestReader reader = BinaryForestReader.open(path))
+		{
+			environment = reader.getEnvironment();
+			trees = reader.getTreeCount();
+		}
+		Parameters p = new Parameters(params);
+		p.binary = true;
+		p.num_tree = Math.addExact(trees, count);
+		checkParameters(p, path);
+		SynthGenerator gen = p.generator();
+		gen.extendEnvironment(environment, trees);
+		unlink(Paths.get(path));
+		// if the trees cannot all be added, the file is truncated back to the former forest
+		try (BinaryForestWriter writer = BinaryForestWriter.append(path))
+		{
+			try {
+				writer.writeEnvironment(environment);
+			}
+			catch (Throwable e) {
+				writer.abort();
+				throw e;
+			}
+			Main.generate(p, gen, environment, trees, p.num_tree, writer, null);
+		}
+		saveParameters(p, path);
+		return p.num_tree;
+	}
+
+	private static int appendXML(Parameters params, String path, int count) throws IOException
+	{
+		LiteralTable existing;
+		try (XMLForestReader reader = XMLForestReader.open(path))
+		{
+			existing = reader.getEnvironment();
+		}
+		int trees = 0;
+		while (existing.indexOf("G-" + trees) >= 0) {
+			trees++;
+		}
+		Parameters p = new Parameters(params);
+		p.binary = false;
+		p.compression = 0;
+		p.num_tree = Math.addExact(trees, count);
+		checkParameters(p, path);
+		SynthGenerator gen = p.generator();
+		// the environment is generated again, so that it is written in the same order as for the whole forest
+		LiteralTable environment = gen.genEnvironment();
+		if (existing.size() != trees + p.num_var) {
+			throw new IllegalArgumentException("The forest has " + existing.size() + " variables, " + (trees + p.num_var)
+					+ " were expected for " + trees + " trees and " + p.num_var + " environment variables");
+		}
+		for (int i = 0; i < existing.size(); i++) {
+			int index = environment.indexOf(existing.get(i, true).getId());
+			if (index < 0 || environment.getInitialState(index) != existing.getInitialState(i)) {
+				throw new IllegalArgumentException("The environment of the forest was not generated with these parameters");
+			}
+		}
+
+		Path file = Paths.get(path);
+		Path tmp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+		try (FileChannel source = FileChannel.open(file, StandardOpenOption.READ))
+		{
+			long first = find(source, "</Environment>", 0, false);
+			if (first < 0) {
+				first = find(source, "<Environment />", 0, false);
+			}
+			long last = find(source, "</Forest>", source.size(), true);
+			if (first < 0 || last < 0) {
+				throw new IOException(path + " is not a forest saved by the generator");
+			}
+			// the former trees start on the line following the environment
+			first = find(source, "\n", first, false) + 1;
+			try (StreamingXMLWriter writer = StreamingXMLWriter.open(tmp.toString()))
+			{
+				try {
+					writer.writeEnvironment(environment);
+					writer.copyGoals(source, first, last);
+				}
+				catch (Throwable e) {
+					writer.abort();
+					throw e;
+				}
+				Main.generate(p, gen, environment, trees, p.num_tree, writer, null);
+			}
+			Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		finally {
+			Files.deleteIfExists(tmp);
+		}
+		saveParameters(p, path);
+		return p.num_tree;
+	}
+
+	/**
+	 * save the parameters of a forest next to it if trees can be added to it, i.e. if it was generated with -j and
+	 * is not compressed, or remove those of a former forest otherwise
+	 * @param params The parameters of the forest
+	 * @param path The file of the forest
+	 */
+	static void saveParameters(Parameters params, String path) throws IOException
+	{
+		Path file = Paths.get(path + EXTENSION);
+		if (params.threads <= 0 || params.compression > 0) {
+			Files.deleteIfExists(file);
+			return;
+		}
+		Files.write(file, (params.toJson() + "\n").getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * check that the trees to add are generated with the parameters saved next to the forest
+	 * @param params The parameters of the trees to add, in the format of the forest
+	 * @param path The file of the forest
+	 * @throws IllegalArgumentException if the parameters are not saved, or if any of them differs
+	 */
+	private static void checkParameters(Parameters params, String path) throws IOException
+	{
+		String saved;
+		try {
+			saved = new String(Files.readAllBytes(Paths.get(path + EXTENSION)), StandardCharsets.UTF_8);
+		}
+		catch (NoSuchFileException e) {
+			throw new IllegalArgumentException("The parameters of the forest are unknown, " + path + EXTENSION
+					+ " is missing: trees can only be added to an uncompressed forest generated with -j");
+		}
+		Map<String, String> expected = treeParameters(saved), actual = treeParameters(params.toJson());
+		StringBuilder mismatches = new StringBuilder();
+		for (String name : TREE_PARAMETERS) {
+			if (!Objects.equals(expected.get(name), actual.get(name))) {
+				mismatches.append(mismatches.length() == 0 ? "" : ", ").append(name).append(' ')
+						.append(expected.get(name)).append(", not ").append(actual.get(name));
+			}
+		}
+		if (mismatches.length() > 0) {
+			throw new IllegalArgumentException("The forest was generated with other parameters: " + mismatches);
+		}
+	}
+
+	/**
+	 * @param json The parameters, as written by {@link Parameters#toJson()}
+	 * @return the value of each parameter, the number of threads being replaced by the stream mode
+	 */
+	private static Map<String, String> treeParameters(String json)
+	{
+		HashMap<String, String> fields = new HashMap<>();
+		Matcher field = FIELD.matcher(json);
+		while (field.find()) {
+			fields.put(field.group(1), field.group(2) != null ? field.group(2) : field.group(3));
+		}
+		String threads = fields.remove("threads");
+		if (threads != null) {
+			fields.put("streams", threads.equals("0") ? "single" : "independent");
+		}
+		return fields;
+	}
+
+	/**
+	 * find a text in a file
+	 * @param channel The file
+	 * @param text The text, in ASCII
+	 * @param from The position the search starts from
+	 * @param backward Whether the search goes towards the start of the file, for the last occurrence before the
+	 * position, or towards its end, for the first occurrence after the position
+	 * @return the position of the text, -1 if it is not found
+	 */
+	static long find(FileChannel channel, String text, long from, boolean backward) throws IOException
+	{
+		byte[] pattern = text.getBytes(StandardCharsets.US_ASCII);
+		ByteBuffer window = ByteBuffer.allocate(StreamingXMLWriter.def_buffer_size);
+		long size = channel.size();
+		// consecutive windows overlap by the length of the text, so that no occurrence is split between two of them
+		int step = window.capacity() - pattern.length;
+		for (long start = backward ? Math.max(0, from - window.capacity()) : from; ;
+				start = backward ? Math.max(0, start - step) : start + step) {
+			if (start >= size) {
+				return -1;
+			}
+			window.clear();
+			while (window.hasRemaining() && channel.read(window, start + window.position()) > 0) {
+			}
+			int n = backward ? (int) Math.min(window.position(), from - start) : window.position();
+			for (int k = 0; k + pattern.length <= n; k++) {
+				int i = backward ? n - pattern.length - k : k;
+				int j = 0;
+				while (j < pattern.length && window.get(i + j) == pattern[j]) {
+					j++;
+				}
+				if (j == pattern.length) {
+					return start + i;
+				}
+			}
+			if (backward ? start == 0 : start + n >= size) {
+				return -1;
+			}
+		}
+	}
+
+	/**
+	 * make sure a file is not linked to another name, e.g. a forest of a {@link ForestCache}, before it is changed
+	 * in place, by replacing it with a copy
+	 * @param file The file
+	 */
+	private static void unlink(Path file) throws IOException
+	{
+		int links;
+		try {
+			links = (Integer) Files.getAttribute(file, "unix:nlink");
+		}
+		catch (UnsupportedOperationException | IllegalArgumentException e) {
+			// no hard links on this file system
+			return;
+		}
+		if (links > 1) {
+			Path copy = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+			try {
+				Files.copy(file, copy, StandardCopyOption.REPLACE_EXISTING);
+				Files.move(copy, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			}
+			finally {
+				Files.deleteIfExists(copy);
+			}
+		}
+	}
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright 2021 Yuan Yao
+ * University of Nottingham
+ * Zhejiang University of Technology
+ * Email: yaoyuan@zjut.edu.cn (yuanyao1990yy@icloud.com)
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details
+ *  <http://www.gnu.org/licenses/gpl-3.0.html>.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uno.gpt.generators;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * @version 1.0
+ *
+ * A directory of generated forests, each file named after the SHA-256 of {@link Parameters#cacheKey()}, so the same
+ * parameters and generator version always find the same file. A forest is generated into a temporary file and moved
+ * into the cache once complete, so the cache never holds a partial forest, even when several runs share it.
+ *
+ * The last-modified time of a file is its last use: when the files exceed the size of the cache, the least recently
+ * used ones are removed until they fit again.
+ *
+ * Usage outside {@link Main}: new ForestCache(directory, capacity).forest("-s", "7", "-d", "4", "-o", "binary")
+ * returns the file of the forest of these flags, which the readers of the package open.
+ */
+public class ForestCache
+{
+	/** extension of the cached forests */
+	static final String EXTENSION = ".forest";
+
+	/** the directory of the cache */
+	final private Path directory;
+
+	/** the size of the cache, in bytes */
+	final private long capacity;
+
+	/**
+	 * @param directory The directory of the cache, created if it does not exist
+	 * @param capacity The size of the cache, in bytes
+	 */
+	public ForestCache(String directory, long capacity) throws IOException
+	{
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("The size of the cache must be greater than 0");
+		}
+		this.directory = Files.createDirectories(Paths.get(directory));
+		this.capacity = capacity;
+	}
+
+	/**
+	 * @param params The parameters of a forest
+	 * @return the file of the forest in the cache, whether or not it exists
+	 */
+	Path file(Parameters params)
+	{
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-256").digest(params.cacheKey().getBytes(StandardCharsets.UTF_8));
+			StringBuilder name = new StringBuilder(digest.length * 2 + EXTENSION.length());
+			for (byte b : digest) {
+				name.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+			}
+			return directory.resolve(name.append(EXTENSION).toString());
+		}
+		catch (NoSuchAlgorithmException e) {
+			// every Java platform has SHA-256
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * look a forest up, marking it as used
+	 * @param params The parameters of the forest
+	 * @return the cached file of the forest, null if it is not in the cache
+	 */
+	Path get(Parameters params)
+	{
+		Path file = file(params);
+		try {
+			Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+			return file;
+		}
+		catch (IOException e) {
+			// not cached, or removed by another run in the meantime
+			return null;
+		}
+	}
+
+	/**
+	 * get a forest from the cache, generating it into the cache if it is not there
+	 * @param flags The flags of the forest, as given to {@link Main}, each followed by its value, e.g. "-s", "7";
+	 * the flags not given keep their default values, and the flags which do not describe a forest, such as -f, are
+	 * not accepted
+	 * @return the cached file of the forest, which must not be changed
+	 * @throws IllegalArgumentException if a flag or a value is not valid
+	 */
+	public Path forest(String... flags) throws IOException
+	{
+		Parameters params = new Parameters();
+		for (int i = 0; i < flags.length; i += 2) {
+			String flag = flags[i];
+			if (flag.length() != 2 || flag.charAt(0) != '-' || !Parameters.isParameter(flag.charAt(1))) {
+				throw new IllegalArgumentException(flag + " is not a valid flag of a forest");
+			}
+			if (i + 1 == flags.length) {
+				throw new IllegalArgumentException(flag + " must be followed by a value");
+			}
+			params.set(flag.charAt(1), flags[i + 1]);
+		}
+		params.validate();
+		return forest(params);
+	}
+
+	/**
+	 * get a forest from the cache, generating it into the cache if it is not there
+	 * @param params The parameters of the forest
+	 * @return the cached file of the forest
+	 */
+	Path forest(Parameters params) throws IOException
+	{
+		Path file = get(params);
+		if (file == null) {
+			// the metrics would be saved next to the temporary file
+			Parameters p = new Parameters(params);
+			p.metrics = false;
+			file = put(params, tmp -> Main.generate(p, tmp.toString()));
+		}
+		return file;
+	}
+
+	/**
+	 * generate a forest into the cache, replacing the cached file if there is one, and evict the least recently
+	 * used forests if the cache is full
+	 * @param params The parameters of the forest
+	 * @param producer Writes the forest to the file it is given
+	 * @return the cached file of the forest
+	 */
+	Path put(Parameters params, Producer producer) throws IOException
+	{
+		Path file = file(params);
+		Path tmp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+		try {
+			producer.write(tmp);
+			Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		finally {
+			Files.deleteIfExists(tmp);
+		}
+		evict(file);
+		return file;
+	}
+
+	/**
+	 * make a cached forest available at a path, as a hard link if the file system allows it, as a copy otherwise.
+	 * A file at the path is replaced, not overwritten, so the cached forest it may be linked to is left unchanged.
+	 * @param file The cached file of the forest
+	 * @param path The path of the forest
+	 */
+	static void link(Path file, String path) throws IOException
+	{
+		Path target = Paths.get(path);
+		Main.replace(target);
+		try {
+			Files.createLink(target, file);
+		}
+		catch (IOException | UnsupportedOperationException e) {
+			// e.g. another file system
+			Files.copy(file, target, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * remove the least recently used forests until the cache fits in its size
+	 * @param kept A forest which is not removed
+	 */
+	private synchronized void evict(Path kept) throws IOException
+	{
+		ArrayList<Path> files = new ArrayList<>();
+		ArrayList<BasicFileAttributes> attributes = new ArrayList<>();
+		long total = 0;
+		try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory, "*" + EXTENSION))
+		{
+			for (Path entry : entries) {
+				try {
+					BasicFileAttributes a = Files.readAttributes(entry, BasicFileAttributes.class);
+					files.add(entry);
+					attributes.add(a);
+					total += a.size();
+				}
+				catch (NoSuchFileException e) {
+					// removed by another run
+				}
+			}
+		}
+		Integer[] order = new Integer[files.size()];
+		for (int i = 0; i < order.length; i++) {
+			order[i] = i;
+		}
+		Arrays.sort(order, Comparator.comparing(i -> attributes.get(i).lastModifiedTime()));
+		for (int i = 0; i < order.length && total > capacity; i++) {
+			Path file = files.get(order[i]);
+			if (!file.equals(kept)) {
+				Files.deleteIfExists(file);
+				total -= attributes.get(order[i]).size();
+			}
+		}
+	}
+
+	/**
+	 * Writes a forest to a file
+	 */
+	interface Producer
+	{
+		void write(Path file) throws IOException;
+	}
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2021 Yuan Yao
+ * University of Nottingham
+ * Zhejiang University of Technology
+ * Email: yaoyuan@zjut.edu.cn (yuanyao1990yy@icloud.com)
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details
+ *  <http://www.gnu.org/licenses/gpl-3.0.html>.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uno.gpt.generators;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+
+import uno.gpt.structure.LiteralTable;
+
+/**
+ * @version 1.0
+ *
+ * Converts a forest saved as XML into the binary format of {@link BinaryForestWriter}, one tree at a time.
+ * Usage: ForestConverter input.xml output.bin
+ */
+class ForestConverter
+{
+	public static void main(String[] args)
+	{
+		if (args.length != 2) {
+			System.out.println("Usage: ForestConverter <input.xml> <output.bin>");
+			System.exit(1);
+		}
+		boolean converted = false;
+		try
+		{
+			try (BinaryForestWriter writer = BinaryForestWriter.open(args[1]))
+			{
+				try {
+					convert(args[0], writer);
+				}
+				catch (Throwable e) {
+					writer.abort();
+					throw e;
+				}
+			}
+			converted = true;
+			System.out.println("Binary File was created successfully!");
+		}
+		catch (IOException | UncheckedIOException ex)
+		{
+			ex.printStackTrace();
+		}
+		finally
+		{
+			// a partial forest is never left behind
+			if (!converted) {
+				try {
+					Main.discard(Paths.get(args[1]));
+				}
+				catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+		if (!converted) {
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * write the environment and the trees of an XML forest
+	 * @param input The XML forest
+	 * @param writer The writer of the binary forest
+	 */
+	private static void convert(String input, BinaryForestWriter writer) throws IOException
+	{
+		LiteralTable environment = new LiteralTable();
+		boolean[] started = {false};
+		XMLForestReader.read(input, environment, gl -> {
+			try {
+				if (!started[0]) {
+					writer.writeEnvironment(environment);
+					started[0] = true;
+				}
+				writer.writeGoal(gl);
+			}
+			catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		});
+		if (!started[0]) {
+			writer.writeEnvironment(environment);
+		}
+	}
+}
@@ -0,0 +1,406 @@
+/*
+ * Copyright 2021 Yuan Yao
+ * University of Nottingham
+ * Zhejiang University of Technology
+ * Email: yaoyuan@zjut.edu.cn (yuanyao1990yy@icloud.com)
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details
+ *  <http://www.gnu.org/licenses/gpl-3.0.html>.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uno.gpt.generators;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import uno.gpt.structure.LiteralTable;
+
+/**
+ * @version 1.0
+ *
+ * A forest split into shards, and the manifest listing them. Each shard is a complete forest file, with the
+ * environment and a range of the trees, so it is opened by {@link XMLForestReader} or {@link BinaryForestReader} on
+ * its own: the shards can be loaded in parallel, or only some of them, tree k of the forest being tree k - from of the
+ * shard whose range holds it. The manifest, output.manifest.json next to the shards, gives the parameters of the
+ * forest and, for each shard, its file, its range of trees, its size and the SHA-256 of its bytes.
+ *
+ * The shards are written in parallel when the trees have their own random streams, and one after another from the
+ * single random stream otherwise. The manifest is written last, so a forest with a manifest is complete.
+ */
+public final class ForestManifest
+{
+	/** extension of the manifest, added to the output path */
+	public static final String EXTENSION = ".manifest.json";
+
+	/** version of the manifest format */
+	static final int VERSION = 1;
+
+	/** a field of an object of the manifest, with a string or an integer value */
+	private static final Pattern FIELD = Pattern.compile("\"(\\w+)\"\\s*:\\s*(?:\"((?:[^\"\\\\]|\\\\.)*)\"|(-?\\d+))");
+
+	/** an object without nested objects */
+	private static final Pattern OBJECT = Pattern.compile("\\{[^{}]*\\}");
+
+	/**
+	 * A shard of a forest
+	 */
+	public static final class Shard
+	{
+		/** the file of the shard, relative to the directory of the manifest */
+		public final String path;
+
+		/** the index in the forest of the first tree of the shard */
+		public final int from;
+
+		/** the index in the forest following the last tree of the shard */
+		public final int to;
+
+		/** the size of the file */
+		public final long bytes;
+
+		/** the SHA-256 of the file, in hexadecimal */
+		public final String sha256;
+
+		Shard(String path, int from, int to, long bytes, String sha256)
+		{
+			this.path = path;
+			this.from = from;
+			this.to = to;
+			this.bytes = bytes;
+			this.sha256 = sha256;
+		}
+	}
+
+	/** the manifest */
+	final private Path file;
+
+	/** whether the shards are in the binary format */
+	final private boolean binary;
+
+	/** the shards, in the order of their trees */
+	final private List<Shard> shards;
+
+	private ForestManifest(Path file, boolean binary, List<Shard> shards)
+	{
+		this.file = file;
+		this.binary = binary;
+		this.shards = Collections.unmodifiableList(shards);
+	}
+
+	/**
+	 * read a manifest
+	 * @param path The manifest
+	 * @return the manifest
+	 * @throws IOException if the file cannot be read or is not a manifest whose shards cover the trees in order
+	 */
+	public static ForestManifest read(String path) throws IOException
+	{
+		Path file = Paths.get(path);
+		String text = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+		int start = text.indexOf("\"shards\"");
+		if (start < 0) {
+			throw new IOException(path + " is not a forest manifest");
+		}
+		Matcher format = Pattern.compile("\"format\"\\s*:\\s*\"(\\w+)\"").matcher(text);
+		boolean binary = format.find() && format.group(1).equals("binary");
+		ArrayList<Shard> shards = new ArrayList<>();
+		Matcher object = OBJECT.matcher(text).region(start, text.length());
+		while (object.find()) {
+			String name = null, sha256 = null;
+			long from = -1, to = -1, bytes = -1;
+			Matcher field = FIELD.matcher(object.group());
+			while (field.find()) {
+				switch (field.group(1)) {
+					case "path": name = unescape(field.group(2)); break;
+					case "sha256": sha256 = field.group(2); break;
+					case "from": from = parseLong(field.group(3)); break;
+					case "to": to = parseLong(field.group(3)); break;
+					case "bytes": bytes = parseLong(field.group(3)); break;
+					default: break;
+				}
+			}
+			int expected = shards.isEmpty() ? 0 : shards.get(shards.size() - 1).to;
+			if (name == null || sha256 == null || bytes < 0 || from != expected || to <= from || to > Integer.MAX_VALUE) {
+				throw new IOException("Shard " + shards.size() + " of " + path + " is not valid, or does not follow the trees of the shard before it");
+			}
+			shards.add(new Shard(name, (int) from, (int) to, bytes, sha256));
+		}
+		if (shards.isEmpty()) {
+			throw new IOException(path + " lists no shards");
+		}
+		return new ForestManifest(file, binary, shards);
+	}
+
+	/** @return whether the shards are in the binary format */
+	public boolean isBinary()
+	{
+		return binary;
+	}
+
+	/** @return the number of trees of the forest */
+	public int getTreeCount()
+	{
+		return shards.get(shards.size() - 1).to;
+	}
+
+	/** @return the shards, in the order of their trees */
+	public List<Shard> getShards()
+	{
+		return shards;
+	}
+
+	/**
+	 * @param tree The index of a tree of the forest
+	 * @return the shard holding the tree
+	 */
+	public Shard shardOf(int tree)
+	{
+		if (tree < 0 || tree >= getTreeCount()) {
+			throw new IndexOutOfBoundsException("Tree " + tree + " is not in a forest of " + getTreeCount() + " trees");
+		}
+		int low = 0, high = shards.size() - 1;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (shards.get(mid).to <= tree) {
+				low = mid + 1;
+			}
+			else {
+				high = mid;
+			}
+		}
+		return shards.get(low);
+	}
+
+	/**
+	 * @param shard A shard of the forest
+	 * @return the file of the shard
+	 */
+	public Path resolve(Shard shard)
+	{
+		Path directory = file.toAbsolutePath().getParent();
+		return directory.resolve(shard.path);
+	}
+
+	/**
+	 * @param shard A shard of the forest
+	 * @return whether the file of the shard has the size and the checksum given by the manifest
+	 */
+	public boolean verify(Shard shard) throws IOException
+	{
+		Path path = resolve(shard);
+		return Files.size(path) == shard.bytes && sha256(path).equals(shard.sha256);
+	}
+
+	/**
+	 * generate a forest into shards and write its manifest
+	 * @param params The parameters of the forest
+	 * @param path The output path, the shards being saved next to it (see {@link #shardPath(String, int)}) and the
+	 * manifest at the path followed by {@link #EXTENSION}
+	 * @param count The number of shards
+	 * @return the manifest
+	 */
+	static ForestManifest generate(Parameters params, String path, int count) throws IOException
+	{
+		if (count <= 0 || count > params.num_tree) {
+			throw new IllegalArgumentException("The number of shards must be between 1 and the number of trees");
+		}
+		// the counters and timings, if they are saved
+		GenerationMetrics metrics = params.metrics ? new GenerationMetrics() : null;
+		SynthGenerator gen = params.generator();
+		gen.setMetrics(metrics);
+		LiteralTable environment = gen.genEnvironment();
+
+		ArrayList<Shard> shards = new ArrayList<>(count);
+		if (params.threads > 0) {
+			// the shards are written at the same time, sharing the generating threads
+			int concurrent = Math.min(count, params.threads);
+			Parameters p = new Parameters(params);
+			p.threads = Math.max(1, params.threads / concurrent);
+			ExecutorService pool = Executors.newFixedThreadPool(concurrent);
+			try {
+				ArrayList<Future<Shard>> written = new ArrayList<>(count);
+				for (int i = 0; i < count; i++) {
+					int shard = i;
+					written.add(pool.submit(() -> write(p, gen, environment, path, shard, count, metrics)));
+				}
+				for (Future<Shard> shard : written) {
+					shards.add(shard.get());
+				}
+			}
+			catch (ExecutionException e) {
+				if (e.getCause() instanceof IOException) {
+					throw (IOException) e.getCause();
+				}
+				if (e.getCause() instanceof RuntimeException) {
+					throw (RuntimeException) e.getCause();
+				}
+				throw new IOException("A shard could not be written", e.getCause());
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while the shards were written", e);
+			}
+			finally {
+				pool.shutdownNow();
+			}
+		}
+		else {
+			// the trees of the single random stream are generated in order, shard after shard
+			for (int i = 0; i < count; i++) {
+				shards.add(write(params, gen, environment, path, i, count, metrics));
+			}
+		}
+
+		ForestManifest manifest = new ForestManifest(Paths.get(path + EXTENSION), params.binary, shards);
+		manifest.save(params);
+		if (metrics != null) {
+			metrics.save(path, params);
+		}
+		return manifest;
+	}
+
+	/**
+	 * generate the trees of a shard into its file
+	 * @return the shard
+	 */
+	private static Shard write(Parameters params, SynthGenerator gen, LiteralTable environment, String path, int shard,
+			int count, GenerationMetrics metrics) throws IOException
+	{
+		int from = (int) ((long) params.num_tree * shard / count);
+		int to = (int) ((long) params.num_tree * (shard + 1) / count);
+		Path file = Paths.get(shardPath(path, shard));
+		Main.replace(file);
+		try (ForestWriter writer = params.binary ? BinaryForestWriter.open(file.toString())
+				: StreamingXMLWriter.open(file.toString(), params.compression))
+		{
+			try {
+				writer.writeEnvironment(environment);
+			}
+			catch (Throwable e) {
+				writer.abort();
+				throw e;
+			}
+			Main.generate(params, gen, environment, from, to, writer, metrics);
+		}
+		catch (Throwable e) {
+			// a shard missing trees is removed, so it cannot be taken for a whole one
+			Main.discard(file);
+			throw e;
+		}
+		return new Shard(file.getFileName().toString(), from, to, Files.size(file), sha256(file));
+	}
+
+	/**
+	 * the file of a shard: the output path with the index of the shard inserted before its extension, e.g.
+	 * gpt-shard3.xml for gpt.xml
+	 * @param path The output path
+	 * @param shard The index of the shard
+	 * @return the path of the shard
+	 */
+	static String shardPath(String path, int shard)
+	{
+		int slash = Math.max(path.lastIndexOf('/'), path.lastIndexOf(java.io.File.separatorChar));
+		int dot = path.indexOf('.', slash + 1);
+		if (dot < 0) {
+			dot = path.length();
+		}
+		return path.substring(0, dot) + "-shard" + shard + path.substring(dot);
+	}
+
+	/**
+	 * write the manifest to a temporary file and move it in place, so a reader never sees a partial manifest
+	 */
+	private void save(Parameters params) throws IOException
+	{
+		Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+		try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(tmp)))
+		{
+			out.println("{");
+			out.println("  \"version\": " + VERSION + ",");
+			out.println("  \"parameters\": " + params.toJson() + ",");
+			out.println("  \"trees\": " + getTreeCount() + ",");
+			out.println("  \"shards\": [");
+			for (int i = 0; i < shards.size(); i++) {
+				Shard s = shards.get(i);
+				out.println("    {\"path\": \"" + escape(s.path) + "\", \"from\": " + s.from + ", \"to\": " + s.to
+						+ ", \"bytes\": " + s.bytes + ", \"sha256\": \"" + s.sha256 + "\"}"
+						+ (i + 1 < shards.size() ? "," : ""));
+			}
+			out.println("  ]");
+			out.println("}");
+		}
+		Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * @param file A file
+	 * @return the SHA-256 of its bytes, in hexadecimal
+	 */
+	static String sha256(Path file) throws IOException
+	{
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+		{
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20);
+			while (channel.read(buffer) >= 0) {
+				buffer.flip();
+				digest.update(buffer);
+				buffer.clear();
+			}
+			StringBuilder hex = new StringBuilder(64);
+			for (byte b : digest.digest()) {
+				hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+			}
+			return hex.toString();
+		}
+		catch (NoSuchAlgorithmException e) {
+			// every Java platform has SHA-256
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static long parseLong(String value)
+	{
+		return value == null ? -1 : Long.parseLong(value);
+	}
+
+	private static String escape(String s)
+	{
+		return s.replace("\\", "\\\\").replace("\"", "\\\"");
+	}
+
+	private static String unescape(String s)
+	{
+		return s.replaceAll("\\\\(.)", "$1");
+	}
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright 2021 Yuan Yao
+ * University of Nottingham
+ * Zhejiang University of Technology
+ * Email: yaoyuan@zjut.edu.cn (yuanyao1990yy@icloud.com)
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details
+ *  <http://www.gnu.org/licenses/gpl-3.0.html>.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uno.gpt.generators;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import uno.gpt.structure.GoalNode;
+
+/**
+ * @version 1.0
+ *
+ * Writes the trees of a forest while the next ones are generated and encoded. Each tree is handed over as a task
+ * producing it; the tasks run on a pool of encoding threads, which encode the trees apart from the file with
+ * {@link ForestWriter#encode(GoalNode)}, and a writer thread writes the encoded trees in the order they were handed
+ * over. At most a window of trees is handed over and not yet written: handing over another one waits for the writer,
+ * so the memory held stays bounded however far the generation runs ahead of the disk.
+ *
+ * Usage: {@link #submit(int, Callable)} every tree in order, then {@link #close()}, which waits for the last tree to
+ * be written. The writer is left open.
+ */
+final class ForestPipeline implements Closeable
+{
+	/**
+	 * Receives the time each tree spent in the writer
+	 */
+	interface Listener
+	{
+		void written(int index, long nanos);
+	}
+
+	/**
+	 * A tree handed over and not yet written
+	 */
+	private static final class Pending
+	{
+		final int index;
+
+		final Future<ForestWriter.Encoded> encoded;
+
+		Pending(int index, Future<ForestWriter.Encoded> encoded)
+		{
+			this.index = index;
+			this.encoded = encoded;
+		}
+	}
+
+	/** handed over after the last tree */
+	private static final Pending END = new Pending(-1, null);
+
+	/** the writer of the forest */
+	final private ForestWriter writer;
+
+	/** receives the time each tree spent in the writer */
+	final private Listener listener;
+
+	/** the trees handed over and not yet taken by the writer thread, in order */
+	final private ArrayBlockingQueue<Pending> pending;
+
+	/** the pool producing and encoding the trees */
+	final private ExecutorService encoders;
+
+	/** the thread writing the encoded trees */
+	final private Thread writerThread;
+
+	/** the first failure of a tree or of the writer, the trees handed over afterwards are dropped */
+	private volatile Throwable failure;
+
+	/** whether the failure has been thrown to the thread handing over the trees, it is thrown once */
+	private boolean thrown;
+
+	/**
+	 * start the writer thread, the environment having been written
+	 * @param writer The writer of the forest
+	 * @param threads The number of encoding threads
+	 * @param window The number of trees which may be handed over and not yet written
+	 * @param listener Receives the time each tree spent in the writer
+	 */
+	ForestPipeline(ForestWriter writer, int threads, int window, Listener listener)
+	{
+		this.writer = writer;
+		this.listener = listener;
+		this.pending = new ArrayBlockingQueue<>(window);
+		this.encoders = Executors.newFixedThreadPool(threads, r -> {
+			Thread t = new Thread(r, "forest-encoder");
+			t.setDaemon(true);
+			return t;
+		});
+		this.writerThread = new Thread(this::write, "forest-writer");
+		this.writerThread.setDaemon(true);
+		this.writerThread.start();
+	}
+
+	/**
+	 * hand over the next tree, waiting while the window is full
+	 * @param index The index of the tree
+	 * @param tree Produces the tree, on an encoding thread
+	 * @throws IOException if a tree handed over before could not be produced or written
+	 */
+	void submit(int index, Callable<GoalNode> tree) throws IOException
+	{
+		rethrow();
+		Future<ForestWriter.Encoded> encoded = encoders.submit(() -> writer.encode(tree.call()));
+		try {
+			pending.put(new Pending(index, encoded));
+		}
+		catch (InterruptedException e) {
+			encoded.cancel(true);
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for the writer");
+		}
+	}
+
+	/**
+	 * wait for the trees handed over to be written and stop the threads
+	 * @throws IOException if a tree could not be produced or written
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		try {
+			pending.put(END);
+			writerThread.join();
+		}
+		catch (InterruptedException e) {
+			writerThread.interrupt();
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for the writer");
+		}
+		finally {
+			encoders.shutdownNow();
+		}
+		rethrow();
+	}
+
+	/**
+	 * the loop of the writer thread: write the trees in order until the end, then drop the trees handed over after
+	 * a failure so that {@link #submit(int, Callable)} does not wait for ever
+	 */
+	private void write()
+	{
+		try {
+			for (Pending p = pending.take(); p != END; p = pending.take()) {
+				if (failure == null) {
+					try {
+						ForestWriter.Encoded encoded = p.encoded.get();
+						long start = System.nanoTime();
+						writer.writeEncoded(encoded);
+						listener.written(p.index, System.nanoTime() - start);
+					}
+					catch (ExecutionException e) {
+						failure = e.getCause();
+					}
+					catch (IOException | RuntimeException | Error e) {
+						failure = e;
+					}
+				}
+				else {
+					p.encoded.cancel(true);
+				}
+			}
+		}
+		catch (InterruptedException e) {
+			if (failure == null) {
+				failure = e;
+			}
+		}
+	}
+
+	private void rethrow() throws IOException
+	{
+		Throwable f = failure;
+		if (f == null || thrown) {
+			return;
+		}
+		thrown = true;
+		if (f instanceof IOException) {
+			throw (IOException) f;
+		}
+		if (f instanceof RuntimeException) {
+			throw (RuntimeException) f;
+		}
+		if (f instanceof Error) {
+			throw (Error) f;
+		}
+		throw new IOException("A tree could not be produced", f);
+	}
+}
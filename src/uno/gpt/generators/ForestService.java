@@ -0,0 +1,290 @@
+/*
+ * Copyright 2021 Yuan Yao
+ * University of Nottingham
+ * Zhejiang University of Technology
+ * Email: yaoyuan@zjut.edu.cn (yuanyao1990yy@icloud.com)
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details
+ *  <http://www.gnu.org/licenses/gpl-3.0.html>.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uno.gpt.generators;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * @version 1.0
+ *
+ * Generates forests on request, over HTTP on the loopback interface, so that a forest costs no JVM start-up nor
+ * warm-up. A request is a GET of /forest whose query gives the flags of the forest without their dash, e.g.
+ * /forest?s=7&amp;d=4&amp;t=100&amp;o=binary, the flags not given keeping the values the service was started with.
+ *
+ * An XML forest is sent in a chunked response as it is generated, gzip-compressed if the z flag is given. A binary
+ * forest is only complete once the header is filled in, so it is generated into a temporary file which is then sent.
+ * If the generation fails once the response has started, the response is cut short, without its last chunk.
+ *
+ * At most a given number of forests are generated at the same time; the requests beyond it wait, and those beyond
+ * five times the limit are refused with 503. The generating and compressing threads of a request are capped at those
+ * the service was started with, at least one, which leaves the forest unchanged as it does not depend on their number.
+ */
+class ForestService
+{
+	/** path of the requests */
+	static final String CONTEXT = "/forest";
+
+	/** the HTTP server */
+	final private HttpServer server;
+
+	/** the threads serving the requests, one per request */
+	final private ExecutorService pool;
+
+	/** the parameters of the flags not given in a request */
+	final private Parameters defaults;
+
+	/** the cache of the forests, null if there is none */
+	final private ForestCache cache;
+
+	/** a permit per forest which can be generated at the same time */
+	final private Semaphore generating;
+
+	/** number of requests either generating or waiting */
+	final private AtomicInteger pending = new AtomicInteger();
+
+	/** maximum number of requests either generating or waiting */
+	final private int maxPending;
+
+	/**
+	 * @param port The port to listen to on the loopback interface, 0 for any free port
+	 * @param concurrency The number of forests generated at the same time
+	 * @param defaults The parameters of the flags not given in a request
+	 * @param cache The cache of the forests, null if there is none
+	 */
+	ForestService(int port, int concurrency, Parameters defaults, ForestCache cache) throws IOException
+	{
+		this.defaults = new Parameters(defaults);
+		this.cache = cache;
+		this.generating = new Semaphore(concurrency);
+		this.maxPending = concurrency * 5;
+		this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		this.pool = Executors.newCachedThreadPool(r -> {
+			Thread t = new Thread(r, "forest-request");
+			t.setDaemon(true);
+			return t;
+		});
+		server.setExecutor(pool);
+		server.createContext(CONTEXT, this::handle);
+	}
+
+	/** start serving the requests */
+	void start()
+	{
+		server.start();
+	}
+
+	/**
+	 * stop serving the requests
+	 * @param delay The number of seconds the requests being served are given to complete
+	 */
+	void stop(int delay)
+	{
+		server.stop(delay);
+		pool.shutdown();
+	}
+
+	/** @return the port the service listens to */
+	int getPort()
+	{
+		return server.getAddress().getPort();
+	}
+
+	/**
+	 * serve a request. An error once the response has started is thrown to the server, which then closes the
+	 * connection without ending the response, so the client cannot mistake a partial forest for a whole one.
+	 */
+	private void handle(HttpExchange exchange) throws IOException
+	{
+		if (!"GET".equals(exchange.getRequestMethod())) {
+			exchange.getResponseHeaders().set("Allow", "GET");
+			error(exchange, 405, "Only GET is supported");
+			return;
+		}
+		Parameters params;
+		try {
+			params = parse(exchange.getRequestURI().getRawQuery());
+		}
+		catch (IllegalArgumentException e) {
+			error(exchange, 400, e.getMessage());
+			return;
+		}
+		if (pending.incrementAndGet() > maxPending) {
+			pending.decrementAndGet();
+			exchange.getResponseHeaders().set("Retry-After", "1");
+			error(exchange, 503, "Too many requests");
+			return;
+		}
+		try {
+			generating.acquire();
+			try {
+				send(exchange, params);
+			}
+			finally {
+				generating.release();
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			exchange.close();
+			return;
+		}
+		catch (IOException | RuntimeException e) {
+			if (exchange.getResponseCode() >= 0) {
+				throw e;
+			}
+			error(exchange, 500, "The forest could not be generated: " + e);
+			return;
+		}
+		finally {
+			pending.decrementAndGet();
+		}
+		exchange.close();
+	}
+
+	/**
+	 * @param query The raw query of a request, null if there is none
+	 * @return the parameters of the forest requested, checked
+	 * @throws IllegalArgumentException if the query is not valid
+	 */
+	private Parameters parse(String query)
+	{
+		Parameters params = new Parameters(defaults);
+		if (query != null && !query.isEmpty()) {
+			for (String pair : query.split("&")) {
+				int eq = pair.indexOf('=');
+				String name = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), StandardCharsets.UTF_8);
+				String value = eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+				if (name.length() != 1 || !Parameters.isParameter(name.charAt(0))) {
+					throw new IllegalArgumentException(name + " is not a valid flag");
+				}
+				params.set(name.charAt(0), value);
+			}
+		}
+		if (params.metrics) {
+			throw new IllegalArgumentException("The metrics report is not available from the service");
+		}
+		params.validate();
+		params.threads = Math.min(params.threads, Math.max(defaults.threads, 1));
+		params.compression = Math.min(params.compression, Math.max(defaults.compression, 1));
+		return params;
+	}
+
+	/**
+	 * generate a forest, or take it from the cache, and send it
+	 */
+	private void send(HttpExchange exchange, Parameters params) throws IOException
+	{
+		exchange.getResponseHeaders().set("Content-Type", params.binary ? "application/octet-stream"
+				: params.compression > 0 ? "application/gzip" : "application/xml");
+		if (cache != null) {
+			Path file = cache.get(params);
+			if (file != null) {
+				try {
+					sendFile(exchange, file);
+					return;
+				}
+				catch (NoSuchFileException e) {
+					// removed by another run since it was found, it is generated again
+				}
+			}
+			sendFile(exchange, cache.forest(params));
+		}
+		else if (params.binary) {
+			Path tmp = Files.createTempFile("forest", ".bin");
+			try {
+				Main.generate(params, tmp.toString());
+				sendFile(exchange, tmp);
+			}
+			finally {
+				Files.deleteIfExists(tmp);
+			}
+		}
+		else {
+			exchange.sendResponseHeaders(200, 0);
+			OutputStream body = exchange.getResponseBody();
+			// the writer is closed whether the generation fails or not, but the response is only ended on success
+			WritableByteChannel channel = Channels.newChannel(new FilterOutputStream(body) {
+				@Override
+				public void write(byte[] b, int off, int len) throws IOException
+				{
+					out.write(b, off, len);
+				}
+
+				@Override
+				public void close() throws IOException
+				{
+					flush();
+				}
+			});
+			if (params.compression > 0) {
+				channel = new ParallelGzipChannel(channel, params.compression);
+			}
+			try (StreamingXMLWriter writer = new StreamingXMLWriter(channel))
+			{
+				Main.generate(params, writer, null);
+			}
+		}
+	}
+
+	/**
+	 * send a file as the response, its length being known
+	 */
+	private static void sendFile(HttpExchange exchange, Path file) throws IOException
+	{
+		long size = Files.size(file);
+		exchange.sendResponseHeaders(200, size == 0 ? -1 : size);
+		try (OutputStream out = exchange.getResponseBody())
+		{
+			Files.copy(file, out);
+		}
+	}
+
+	/**
+	 * send an error as a plain text response
+	 */
+	private static void error(HttpExchange exchange, int status, String message) throws IOException
+	{
+		byte[] body = (message + "\n").getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+		exchange.sendResponseHeaders(status, body.length);
+		exchange.getResponseBody().write(body);
+		exchange.close();
+	}
+}
@@ -0,0 +1,434 @@
+/*
+ * Copyright 2021 Yuan Yao
+ * University of Nottingham
+ * Zhejiang University of Technology
+ * Email: yaoyuan@zjut.edu.cn (yuanyao1990yy@icloud.com)
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details
+ *  <http://www.gnu.org/licenses/gpl-3.0.html>.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uno.gpt.generators;
+
+import java.io.DataInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import uno.gpt.structure.*;
+
+/**
+ * @version 1.0
+ *
+ * Checks that the conditions of goal-plan trees line up, without executing them. Each plan is run on the set of
+ * literals it knows to hold: its precondition, then the postconditions of its actions and the goal-conditions of its
+ * subgoals, in order. The checks are:
+ * <ul>
+ * <li>no condition holds a literal and its negation;</li>
+ * <li>the precondition of every action of a plan is known to hold when the action is reached;</li>
+ * <li>the precondition of every plan of a subgoal is known to hold when the subgoal is reached, except for the
+ * literals of pure environment variables, which no action of the tree changes;</li>
+ * <li>every plan of a goal brings about the goal-condition;</li>
+ * <li>no action below a subgoal changes a variable its parent plan relies on, i.e. the precondition of the plan or a
+ * postcondition of one of its steps, apart from the goal-condition of the subgoal itself; a subgoal changing such a
+ * variable would be given plans outside the safe conditions of its parent plan.</li>
+ * </ul>
+ * A subgoal is assumed to achieve its goal-condition and to change any variable its actions change. Trees are checked
+ * in parallel, each one as a {@link FlatForest}, with the known literals of a plan in a bitset of literal codes.
+ *
+ * Usage: ForestValidator forest.xml|forest.bin [threads]. The violations are printed, and the exit status is 1 if
+ * there are any.
+ */
+public class ForestValidator
+{
+	/** maximum number of violations printed by the command line */
+	private static final int MAX_PRINTED = 100;
+
+	public static void main(String[] args)
+	{
+		if (args.length < 1 || args.length > 2) {
+			System.out.println("Usage: ForestValidator <forest.xml|forest.bin> [threads]");
+			System.exit(1);
+		}
+		int threads = Runtime.getRuntime().availableProcessors();
+		if (args.length == 2) {
+			try {
+				threads = Integer.parseInt(args[1]);
+			}
+			catch (NumberFormatException e) {
+				threads = 0;
+			}
+			if (threads <= 0) {
+				System.out.println("The number of threads must be greater than 0");
+				System.exit(1);
+			}
+		}
+		try {
+			long start = System.nanoTime();
+			int[] counts = validateFile(args[0], threads);
+			System.out.printf("%d trees checked in %.2f s, %d violations%n", counts[0],
+					(System.nanoTime() - start) / 1e9, counts[1]);
+			if (counts[1] > 0) {
+				System.exit(1);
+			}
+		}
+		catch (IOException | UncheckedIOException ex) {
+			ex.printStackTrace();
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * check the trees of a file, a chunk of trees at a time, and print the first violations; the chunks share one pool
+	 * @return the number of trees and the number of violations
+	 */
+	private static int[] validateFile(String path, int threads) throws IOException
+	{
+		int chunk = threads * 64;
+		int[] counts = new int[2];
+		ArrayList<GoalNode> trees = new ArrayList<>(chunk);
+		LiteralTable environment;
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			if (isBinary(path)) {
+				try (BinaryForestReader reader = BinaryForestReader.open(path)) {
+					environment = reader.getEnvironment();
+					for (int i = 0; i < reader.getTreeCount(); i++) {
+						trees.add(reader.getTree(i));
+						if (trees.size() == chunk) {
+							report(validateAll(environment, trees, counts[0], pool), trees.size(), counts);
+							trees.clear();
+						}
+					}
+				}
+			}
+			else {
+				LiteralTable table = environment = new LiteralTable();
+				XMLForestReader.read(path, table, gl -> {
+					trees.add(gl);
+					if (trees.size() == chunk) {
+						report(validateAll(table, trees, counts[0], pool), trees.size(), counts);
+						trees.clear();
+					}
+				});
+			}
+			report(validateAll(environment, trees, counts[0], pool), trees.size(), counts);
+		} finally {
+			pool.shutdown();
+		}
+		return counts;
+	}
+
+	private static boolean isBinary(String path) throws IOException
+	{
+		try (DataInputStream in = new DataInputStream(new FileInputStream(path))) {
+			return Integer.reverseBytes(in.readInt()) == BinaryForestWriter.MAGIC;
+		}
+		catch (java.io.EOFException e) {
+			return false;
+		}
+	}
+
+	private static void report(List<Violation> violations, int trees, int[] counts)
+	{
+		for (Violation v : violations) {
+			if (counts[1]++ < MAX_PRINTED) {
+				System.out.println(v);
+			}
+		}
+		counts[0] += trees;
+	}
+
+	/**
+	 * check trees in parallel
+	 * @param environment The environment the literals of the trees come from
+	 * @param trees The top-level goals
+	 * @param first The index of the first tree, used in the violations
+	 * @param threads The number of threads
+	 * @return the violations, ordered by tree
+	 */
+	public static List<Violation> validateAll(LiteralTable environment, List<GoalNode> trees, int first, int threads)
+	{
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			return validateAll(environment, trees, first, pool);
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * check trees in parallel in a pool, which is left running for the next trees
+	 * @param environment The environment the literals of the trees come from
+	 * @param trees The top-level goals
+	 * @param first The index of the first tree, used in the violations
+	 * @param pool The pool the trees are checked in
+	 * @return the violations, ordered by tree
+	 */
+	static List<Violation> validateAll(LiteralTable environment, List<GoalNode> trees, int first, ForkJoinPool pool)
+	{
+		return pool.submit(() -> IntStream.range(0, trees.size()).parallel()
+				.mapToObj(i -> validate(environment, trees.get(i), first + i))
+				.flatMap(List::stream)
+				.collect(Collectors.toList())).join();
+	}
+
+	/**
+	 * check a tree
+	 * @param environment The environment the literals of the tree come from
+	 * @param tree The top-level goal
+	 * @param index The index of the tree, used in the violations
+	 * @return the violations, in the order of the nodes
+	 */
+	public static List<Violation> validate(LiteralTable environment, GoalNode tree, int index)
+	{
+		return new Check(FlatForest.of(environment, List.of(tree)), index).run();
+	}
+
+	/**
+	 * The check of a tree
+	 */
+	private static final class Check
+	{
+		final private FlatForest f;
+
+		/** the index of the tree */
+		final private int index;
+
+		final private ArrayList<Violation> violations = new ArrayList<>();
+
+		/** the variables changed by the actions of the tree */
+		final private BitSet changed = new BitSet();
+
+		/** the literals known to hold in the plan being run, by code, and the variables it relies on */
+		final private BitSet known = new BitSet(), relied = new BitSet();
+
+		/** the variables changed below a subgoal, apart from its goal-condition */
+		final private BitSet side = new BitSet();
+
+		/** the variables changed below each goal and plan, kept until its parent has been checked */
+		final private BitSet[] below;
+
+		Check(FlatForest f, int index)
+		{
+			this.f = f;
+			this.index = index;
+			this.below = new BitSet[f.size()];
+		}
+
+		List<Violation> run()
+		{
+			// conditions are shared, each one is checked for the first node using it
+			BitSet checked = new BitSet(f.getConditionCount());
+			for (int n = 0; n < f.size(); n++) {
+				consistent(n, f.getCondition(n), checked);
+				if (f.getKind(n) == FlatForest.ACTION) {
+					consistent(n, f.getPostcondition(n), checked);
+					or(f.getPostcondition(n), changed, true);
+				}
+			}
+			// the plans of the top-level goal only rely on pure environment variables
+			for (int i = 0; i < f.getChildCount(0); i++) {
+				context(f.getChild(0, i));
+			}
+			// children are numbered after their parent, so going backwards visits the children of a node before it
+			for (int n = f.size() - 1; n >= 0; n--) {
+				if (f.getKind(n) == FlatForest.ACTION) {
+					continue;
+				}
+				if (f.getKind(n) == FlatForest.PLAN) {
+					plan(n);
+				}
+				BitSet vars = new BitSet();
+				for (int i = 0; i < f.getChildCount(n); i++) {
+					int c = f.getChild(n, i);
+					if (f.getKind(c) == FlatForest.ACTION) {
+						or(f.getPostcondition(c), vars, true);
+					}
+					else {
+						vars.or(below[c]);
+						below[c] = null;
+					}
+				}
+				below[n] = vars;
+			}
+			violations.sort((a, b) -> Integer.compare(a.node, b.node));
+			return violations;
+		}
+
+		/**
+		 * run a plan on the literals it knows to hold
+		 */
+		private void plan(int plan)
+		{
+			known.clear();
+			or(f.getCondition(plan), known, false);
+			relied.clear();
+			or(f.getCondition(plan), relied, true);
+			for (int i = 0; i < f.getChildCount(plan); i++) {
+				int step = f.getChild(plan, i);
+				or(f.getKind(step) == FlatForest.ACTION ? f.getPostcondition(step) : f.getCondition(step), relied, true);
+			}
+			for (int i = 0; i < f.getChildCount(plan); i++) {
+				int step = f.getChild(plan, i);
+				if (f.getKind(step) == FlatForest.ACTION) {
+					int pre = f.getCondition(step);
+					for (int p = f.getConditionStart(pre); p < f.getConditionEnd(pre); p++) {
+						if (!known.get(f.getLiteralCode(p))) {
+							add(step, "precondition " + literal(f.getLiteralCode(p)) + " is not established by plan "
+									+ f.getName(plan));
+						}
+					}
+					apply(f.getPostcondition(step));
+					continue;
+				}
+				for (int j = 0; j < f.getChildCount(step); j++) {
+					context(f.getChild(step, j));
+				}
+				// the variables the subgoal changes, apart from its goal-condition
+				side.clear();
+				side.or(below[step]);
+				int gc = f.getCondition(step);
+				for (int p = f.getConditionStart(gc); p < f.getConditionEnd(gc); p++) {
+					side.clear(f.getLiteralCode(p) >>> 1);
+				}
+				for (int v = side.nextSetBit(0); v >= 0; v = side.nextSetBit(v + 1)) {
+					if (relied.get(v)) {
+						add(step, "subgoal changes " + f.getEnvironment().get(v, true).getId() + ", which plan "
+								+ f.getName(plan) + " relies on");
+					}
+					// anything else the subgoal changes is no longer known
+					known.clear(v << 1);
+					known.clear(v << 1 | 1);
+				}
+				// the subgoal achieves its goal-condition
+				apply(gc);
+			}
+			int goal = f.getParent(plan);
+			int gc = f.getCondition(goal);
+			for (int p = f.getConditionStart(gc); p < f.getConditionEnd(gc); p++) {
+				if (!known.get(f.getLiteralCode(p))) {
+					add(plan, "goal-condition " + literal(f.getLiteralCode(p)) + " of " + f.getName(goal)
+							+ " is not achieved");
+				}
+			}
+		}
+
+		/**
+		 * check that the precondition of a plan holds when its goal is reached, the literals known to hold being
+		 * those of the plan running into the goal
+		 */
+		private void context(int plan)
+		{
+			int pre = f.getCondition(plan);
+			for (int p = f.getConditionStart(pre); p < f.getConditionEnd(pre); p++) {
+				int code = f.getLiteralCode(p);
+				if (f.getParent(plan) > 0 ? !known.get(code) && changed.get(code >>> 1) : changed.get(code >>> 1)) {
+					add(plan, "context condition " + literal(code) + " is not established when "
+							+ f.getName(f.getParent(plan)) + " is pursued");
+				}
+			}
+		}
+
+		/**
+		 * check that a condition does not hold a literal and its negation, unless it has been checked already
+		 */
+		private void consistent(int node, int condition, BitSet checked)
+		{
+			if (checked.get(condition)) {
+				return;
+			}
+			checked.set(condition);
+			int start = f.getConditionStart(condition), end = f.getConditionEnd(condition);
+			for (int p = start; p < end; p++) {
+				for (int q = p + 1; q < end; q++) {
+					if ((f.getLiteralCode(p) ^ f.getLiteralCode(q)) == 1) {
+						add(node, "condition holds " + literal(f.getLiteralCode(p)) + " and its negation");
+					}
+				}
+			}
+		}
+
+		/**
+		 * add the literals of a condition to a set
+		 * @param variables Whether the set holds variable indexes rather than literal codes
+		 */
+		private void or(int condition, BitSet set, boolean variables)
+		{
+			for (int p = f.getConditionStart(condition); p < f.getConditionEnd(condition); p++) {
+				set.set(variables ? f.getLiteralCode(p) >>> 1 : f.getLiteralCode(p));
+			}
+		}
+
+		/**
+		 * make the literals of a condition known to hold, and their negations not
+		 */
+		private void apply(int condition)
+		{
+			for (int p = f.getConditionStart(condition); p < f.getConditionEnd(condition); p++) {
+				int code = f.getLiteralCode(p);
+				known.clear(code ^ 1);
+				known.set(code);
+			}
+		}
+
+		private String literal(int code)
+		{
+			return f.getLiteral(code).toSimpleString();
+		}
+
+		private void add(int node, String message)
+		{
+			violations.add(new Violation(index, node, f.getName(node), message));
+		}
+	}
+
+	/**
+	 * A condition which does not line up
+	 */
+	public static final class Violation
+	{
+		/** the index of the tree */
+		final public int tree;
+
+		/** the number of the node in the tree, breadth-first */
+		final int node;
+
+		/** the name of the node */
+		final public String name;
+
+		/** what is wrong */
+		final public String message;
+
+		Violation(int tree, int node, String name, String message)
+		{
+			this.tree = tree;
+			this.node = node;
+			this.name = name;
+			this.message = message;
+		}
+
+		@Override
+		public String toString()
+		{
+			return "tree " + tree + ", " + name + ": " + message;
+		}
+	}
+}
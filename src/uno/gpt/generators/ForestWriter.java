@@ -0,0 +1,106 @@
+/*
+ * Copyright 2021 Yuan Yao
+ * University of Nottingham
+ * Zhejiang University of Technology
+ * Email: yaoyuan@zjut.edu.cn (yuanyao1990yy@icloud.com)
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details
+ *  <http://www.gnu.org/licenses/gpl-3.0.html>.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uno.gpt.generators;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import uno.gpt.structure.GoalNode;
+import uno.gpt.structure.LiteralTable;
+
+/**
+ * @version 1.0
+ *
+ * A writer saving a forest one tree at a time: the environment first, then each top-level goal, then close. If the
+ * forest cannot be written whole, the writer is aborted before it is closed, so that the output is never taken for a
+ * whole forest.
+ */
+interface ForestWriter extends Closeable
+{
+	/**
+	 * write the environment, before any goal
+	 * @param environment The environment
+	 */
+	void writeEnvironment(LiteralTable environment) throws IOException;
+
+	/**
+	 * write a top-level goal
+	 * @param gl The goal
+	 */
+	void writeGoal(GoalNode gl) throws IOException;
+
+	/**
+	 * @return a sink writing a top-level goal as a generator hands its nodes over, so that the tree is never held
+	 * in memory as a whole; the environment must have been written first
+	 */
+	TreeSink treeSink();
+
+	/**
+	 * encode a top-level goal apart from the file, so that goals can be encoded on several threads at the same time,
+	 * then written in order by {@link #writeEncoded(Encoded)}. Once the environment is written, it can be called
+	 * from any thread, concurrently with the other methods.
+	 * @param gl The goal
+	 * @return the encoded goal
+	 */
+	Encoded encode(GoalNode gl) throws IOException;
+
+	/**
+	 * write a top-level goal encoded by {@link #encode(GoalNode)}
+	 * @param goal The encoded goal
+	 */
+	void writeEncoded(Encoded goal) throws IOException;
+
+	/**
+	 * give up the forest: {@link #close()} then neither ends it nor completes it, so the output cannot be read as a
+	 * forest with fewer trees. The file is left to the caller, which removes it.
+	 */
+	void abort();
+
+	/**
+	 * A top-level goal encoded apart from the file
+	 */
+	final class Encoded
+	{
+		static final int[] NO_REFERENCES = {};
+
+		/** the bytes of the goal, followed by unused bytes */
+		final byte[] bytes;
+
+		/** the number of bytes of the goal */
+		final int length;
+
+		/** the positions in the bytes of the references to the records of the goal, which are relative to the start
+		 * of the bytes until they are written */
+		final int[] references;
+
+		/** the reference of the goal, relative to the start of the bytes */
+		final int root;
+
+		Encoded(byte[] bytes, int length, int[] references, int root)
+		{
+			this.bytes = bytes;
+			this.length = length;
+			this.references = references;
+			this.root = root;
+		}
+	}
+}
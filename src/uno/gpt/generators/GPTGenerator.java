@@ -1,14 +1,77 @@
 package uno.gpt.generators;
 
 import uno.gpt.structure.GoalNode;
-import uno.gpt.structure.Literal;
+import uno.gpt.structure.LiteralTable;
 
-import java.util.HashMap;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
-interface GPTGenerator {
+public interface GPTGenerator {
 
-    HashMap<String, Literal> genEnvironment();
+    LiteralTable genEnvironment();
 
     GoalNode genTopLevelGoal(int index);
 
+    /**
+     * Generate a top-level goal like {@link #genTopLevelGoal(int)}, handing its nodes to a sink in document order
+     * instead of returning the tree, so that it never has to be held in memory as a whole
+     */
+    void genTopLevelGoal(int index, TreeSink sink) throws IOException;
+
+    /**
+     * Generate a top-level goal from a random stream derived from the seed and its index, so that it does not depend
+     * on any other tree
+     */
+    GoalNode genIndependentGoal(int index);
+
+    /**
+     * Generate a range of top-level goals on several threads, each tree from a random stream derived from the seed
+     * and its index, so that the result does not depend on the number of threads
+     */
+    ArrayList<GoalNode> genTopLevelGoals(int from, int count, int threads);
+
+    /**
+     * Generate a range of top-level goals lazily, each tree only when the consumer asks for the next one, so that
+     * only the trees the consumer keeps are in memory. The trees are drawn from the shared random stream like
+     * {@link #genTopLevelGoal(int)}, so the generator must not be used for anything else while iterating.
+     */
+    default Iterator<GoalNode> iterateTopLevelGoals(int from, int count) {
+        return new Iterator<GoalNode>() {
+            private int next = from;
+
+            @Override
+            public boolean hasNext() {
+                return next < from + count;
+            }
+
+            @Override
+            public GoalNode next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return genTopLevelGoal(next++);
+            }
+        };
+    }
+
+    /**
+     * A lazy stream over a range of top-level goals. With independent random streams (see
+     * {@link #genIndependentGoal(int)}) the stream can be made parallel; otherwise it is sequential and draws from
+     * the shared random stream like {@link #iterateTopLevelGoals(int, int)}.
+     */
+    default Stream<GoalNode> streamTopLevelGoals(int from, int count, boolean independent) {
+        if (independent) {
+            return IntStream.range(from, from + count).mapToObj(this::genIndependentGoal);
+        }
+        return StreamSupport.stream(Spliterators.spliterator(iterateTopLevelGoals(from, count), count,
+                Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
 }
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2021 Yuan Yao
+ * University of Nottingham
+ * Zhejiang University of Technology
+ * Email: yaoyuan@zjut.edu.cn (yuanyao1990yy@icloud.com)
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details
+ *  <http://www.gnu.org/licenses/gpl-3.0.html>.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uno.gpt.generators;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * @version 1.0
+ *
+ * The Flight Recorder events of the generator, recorded with e.g. -XX:StartFlightRecording. They cost nothing while no
+ * recording is running.
+ */
+final class GenerationEvents
+{
+	private GenerationEvents()
+	{
+	}
+
+	@Name("uno.gpt.Environment")
+	@Label("Environment Generation")
+	@Category("GenGPT")
+	static class Environment extends Event
+	{
+		@Label("Variables")
+		int variables;
+	}
+
+	@Name("uno.gpt.Tree")
+	@Label("Goal-Plan Tree Generation")
+	@Description("The generation of a goal-plan tree, including the time its nodes spend in the sink when it is written as it is generated")
+	@Category("GenGPT")
+	static class Tree extends Event
+	{
+		@Label("Tree")
+		int index;
+
+		@Label("Goals")
+		int goals;
+
+		@Label("Plans")
+		int plans;
+
+		@Label("Actions")
+		int actions;
+
+		@Label("Literals")
+		@Description("Literals in the conditions of all the nodes")
+		long literals;
+
+		@Label("Variable Selection")
+		@Timespan
+		long selection;
+
+		@Label("Plan Body Construction")
+		@Timespan
+		long planBody;
+
+		@Label("Safe Conditions")
+		@Timespan
+		long safeCondition;
+	}
+
+	@Name("uno.gpt.Write")
+	@Label("Goal-Plan Tree Output")
+	@Category("GenGPT")
+	static class Write extends Event
+	{
+		@Label("Tree")
+		int index;
+
+		@Label("Format")
+		String format;
+
+		@Label("Write Time")
+		@Description("Time spent in the writer, which is interleaved with the generation when trees are written as they are generated")
+		@Timespan
+		long writeTime;
+	}
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2021 Yuan Yao
+ * University of Nottingham
+ * Zhejiang University of Technology
+ * Email: yaoyuan@zjut.edu.cn (yuanyao1990yy@icloud.com)
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details
+ *  <http://www.gnu.org/licenses/gpl-3.0.html>.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uno.gpt.generators;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @version 1.0
+ *
+ * Counters and timings of the generation of a forest, collected from the generator and the writer, and saved next to
+ * the output as a CSV file with a row per tree and a JSON summary.
+ *
+ * When the trees are written as they are generated, the time a tree spends in the writer is taken off the time of its
+ * generation. With several generating threads, the times of the trees add up to more than the elapsed time.
+ */
+class GenerationMetrics
+{
+	/**
+	 * The counters and timings of one tree, all times in nanoseconds
+	 */
+	static class Tree
+	{
+		final int index;
+		int goals, plans, actions;
+		long literals;
+		/** the generation, without the time spent in the writer */
+		long nanos;
+		long selectionNanos, planBodyNanos, safeConditionNanos;
+		long writeNanos;
+
+		Tree(int index)
+		{
+			this.index = index;
+		}
+	}
+
+	/** the trees, by index */
+	final private ConcurrentHashMap<Integer, Tree> trees = new ConcurrentHashMap<>();
+
+	/** start of the whole generation */
+	final private long start = System.nanoTime();
+
+	private int variables;
+	private long environmentNanos;
+
+	/**
+	 * record the generation of the environment
+	 */
+	void environment(int variables, long nanos)
+	{
+		this.variables = variables;
+		this.environmentNanos = nanos;
+	}
+
+	/**
+	 * @return the counters of a tree, created on first use
+	 */
+	Tree tree(int index)
+	{
+		return trees.computeIfAbsent(index, Tree::new);
+	}
+
+	/**
+	 * record the time a tree spent in the writer
+	 * @param index The index of the tree
+	 * @param nanos The time spent in the writer
+	 * @param interleaved Whether the tree was written as it was generated, the time is then taken off its generation
+	 */
+	void written(int index, long nanos, boolean interleaved)
+	{
+		Tree t = tree(index);
+		t.writeNanos += nanos;
+		if (interleaved) {
+			t.nanos -= nanos;
+		}
+	}
+
+	/**
+	 * save the metrics next to the output: output.metrics.csv with a row per tree, output.metrics.json with the
+	 * parameters and the totals
+	 * @param output The path of the forest
+	 * @param params The parameters of the forest
+	 */
+	void save(String output, Parameters params) throws IOException
+	{
+		long elapsed = System.nanoTime() - start;
+		ArrayList<Tree> sorted = new ArrayList<>(trees.values());
+		sorted.sort(Comparator.comparingInt(t -> t.index));
+		Tree total = new Tree(-1);
+		try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(Paths.get(output + ".metrics.csv"))))
+		{
+			out.println("tree,goals,plans,actions,literals,generation_ns,selection_ns,plan_body_ns,safe_condition_ns,write_ns");
+			for (Tree t : sorted) {
+				out.println(t.index + "," + t.goals + "," + t.plans + "," + t.actions + "," + t.literals + ","
+						+ t.nanos + "," + t.selectionNanos + "," + t.planBodyNanos + ","
+						+ t.safeConditionNanos + "," + t.writeNanos);
+				total.goals += t.goals;
+				total.plans += t.plans;
+				total.actions += t.actions;
+				total.literals += t.literals;
+				total.nanos += t.nanos;
+				total.selectionNanos += t.selectionNanos;
+				total.planBodyNanos += t.planBodyNanos;
+				total.safeConditionNanos += t.safeConditionNanos;
+				total.writeNanos += t.writeNanos;
+			}
+		}
+		try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(Paths.get(output + ".metrics.json"))))
+		{
+			out.println("{");
+			out.println("  \"parameters\": " + params.toJson() + ",");
+			out.println("  \"environment\": {\"variables\": " + variables + ", \"generation_ns\": " + environmentNanos
+					+ "},");
+			out.println("  \"totals\": {\"trees\": " + sorted.size() + ", \"goals\": " + total.goals
+					+ ", \"plans\": " + total.plans + ", \"actions\": " + total.actions + ", \"literals\": "
+					+ total.literals + ", \"generation_ns\": " + total.nanos + ", \"selection_ns\": "
+					+ total.selectionNanos + ", \"plan_body_ns\": " + total.planBodyNanos
+					+ ", \"safe_condition_ns\": " + total.safeConditionNanos + ", \"write_ns\": " + total.writeNanos
+					+ "},");
+			out.println("  \"elapsed_ns\": " + elapsed);
+			out.println("}");
+		}
+	}
+}
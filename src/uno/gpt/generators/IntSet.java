@@ -0,0 +1,229 @@
+/*
+ * Copyright 2021 Yuan Yao
+ * University of Nottingham
+ * Zhejiang University of Technology
+ * Email: yaoyuan@zjut.edu.cn (yuanyao1990yy@icloud.com)
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details
+ *  <http://www.gnu.org/licenses/gpl-3.0.html>.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uno.gpt.generators;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.function.IntConsumer;
+
+/**
+ * @version 1.0
+ *
+ * A set of non-negative ints. While the values are small, they are kept in a BitSet; once a value reaches
+ * DENSE_LIMIT, they move to an open-addressing hash table, whose memory and time to copy follow the number of values
+ * and not the largest of them, which matters for sets of variables once the environment holds millions of variables.
+ */
+final class IntSet
+{
+	/** the values are kept in a BitSet while they are below this limit */
+	private static final int DENSE_LIMIT = 1 << 12;
+
+	/** marks a slot that was never used, resp. whose value was removed */
+	private static final int FREE = -1, REMOVED = -2;
+
+	/** the values while they are all below DENSE_LIMIT, null once they are in the slots */
+	private BitSet bits;
+
+	/** the slots, a power of two of them, null while the values are in the BitSet */
+	private int[] slots;
+
+	/** number of values */
+	private int size;
+
+	/** number of slots holding a value or a removed value */
+	private int used;
+
+	IntSet()
+	{
+		this.bits = new BitSet();
+	}
+
+	/** copy constructor */
+	IntSet(IntSet other)
+	{
+		this.bits = other.bits == null ? null : (BitSet) other.bits.clone();
+		this.slots = other.slots == null ? null : other.slots.clone();
+		this.size = other.size;
+		this.used = other.used;
+	}
+
+	boolean isEmpty()
+	{
+		return bits != null ? bits.isEmpty() : size == 0;
+	}
+
+	/**
+	 * @return whether the value is in the set
+	 */
+	boolean get(int value)
+	{
+		if (bits != null) {
+			return bits.get(value);
+		}
+		int mask = slots.length - 1;
+		for (int i = hash(value) & mask; ; i = (i + 1) & mask) {
+			if (slots[i] == value) {
+				return true;
+			}
+			if (slots[i] == FREE) {
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * add a value
+	 */
+	void set(int value)
+	{
+		if (bits != null) {
+			if (value < DENSE_LIMIT) {
+				bits.set(value);
+				return;
+			}
+			// the values move to the slots
+			BitSet values = bits;
+			bits = null;
+			slots = new int[16];
+			Arrays.fill(slots, FREE);
+			for (int v = values.nextSetBit(0); v >= 0; v = values.nextSetBit(v + 1)) {
+				set(v);
+			}
+		}
+		int mask = slots.length - 1;
+		int removed = -1;
+		for (int i = hash(value) & mask; ; i = (i + 1) & mask) {
+			if (slots[i] == value) {
+				return;
+			}
+			if (slots[i] == REMOVED && removed < 0) {
+				removed = i;
+			}
+			if (slots[i] == FREE) {
+				if (removed >= 0) {
+					slots[removed] = value;
+				}
+				else {
+					slots[i] = value;
+					used++;
+				}
+				size++;
+				if (used * 2 > slots.length) {
+					rehash();
+				}
+				return;
+			}
+		}
+	}
+
+	/**
+	 * remove a value
+	 */
+	void clear(int value)
+	{
+		if (bits != null) {
+			bits.clear(value);
+			return;
+		}
+		int mask = slots.length - 1;
+		for (int i = hash(value) & mask; slots[i] != FREE; i = (i + 1) & mask) {
+			if (slots[i] == value) {
+				slots[i] = REMOVED;
+				size--;
+				return;
+			}
+		}
+	}
+
+	/**
+	 * remove every value
+	 */
+	void clear()
+	{
+		if (bits != null) {
+			bits.clear();
+		}
+		else if (used > 0) {
+			Arrays.fill(slots, FREE);
+			size = 0;
+			used = 0;
+		}
+	}
+
+	/**
+	 * remove the values of another set
+	 */
+	void removeAll(IntSet other)
+	{
+		if (bits != null && other.bits != null) {
+			bits.andNot(other.bits);
+		}
+		else {
+			other.forEach(this::clear);
+		}
+	}
+
+	/**
+	 * hand every value over, in no particular order
+	 */
+	void forEach(IntConsumer action)
+	{
+		if (bits != null) {
+			for (int v = bits.nextSetBit(0); v >= 0; v = bits.nextSetBit(v + 1)) {
+				action.accept(v);
+			}
+			return;
+		}
+		for (int v : slots) {
+			if (v >= 0) {
+				action.accept(v);
+			}
+		}
+	}
+
+	/**
+	 * copy the values into a table sized for them, dropping the removed values
+	 */
+	private void rehash()
+	{
+		int[] old = slots;
+		int capacity = 16;
+		while (capacity < size * 4) {
+			capacity <<= 1;
+		}
+		slots = new int[capacity];
+		Arrays.fill(slots, FREE);
+		size = 0;
+		used = 0;
+		for (int v : old) {
+			if (v >= 0) {
+				set(v);
+			}
+		}
+	}
+
+	private static int hash(int value)
+	{
+		int h = value * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+}
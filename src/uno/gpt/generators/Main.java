@@ -22,13 +22,28 @@
  */
 
 package uno.gpt.generators;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import uno.gpt.structure.*;
 
 /**
- * @version 3.0
+ * @version 4.0
  *
  * flex the limitation of strictly sequential execution
  */
@@ -39,18 +54,27 @@ class Main
 	 */
 	public static void main(String[] args)
 	{
-		// Shared parameters with their default values
-		int seed = AbstractGenerator.def_seed, num_tree = AbstractGenerator.def_num_tree;
-		//Synth parameters with their default values
-		int sy_depth = SynthGenerator.def_depth,
-				sy_num_goal = SynthGenerator.def_num_goal,
-				sy_num_plan = SynthGenerator.def_num_plan,
-				sy_num_action = SynthGenerator.def_num_action,
-				sy_num_var = SynthGenerator.def_num_var,
-				sy_num_selected = SynthGenerator.def_num_selected;
-		double sy_prob_leaf = SynthGenerator.def_prob_leaf;
+		// the parameters of the forest, with their default values
+		Parameters params = new Parameters();
 		// default output path
 		String path ="gpt.xml";
+		// the batch file, null if there is none
+		String batch = null;
+		// number of configurations of a batch, or of requests to the service, generated at the same time, 0 if it is
+		// not specified
+		int concurrent = 0;
+		// the port of the service, -1 if the forests are not generated on request
+		int port = -1;
+		// number of trees added to the forest of the output path, 0 to generate a new forest
+		int added = 0;
+		// number of shards the forest is split into, 0 for a single file
+		int shards = 0;
+		// the flags given a comma-separated list of values, every combination of which is a configuration of a batch
+		LinkedHashMap<Character, String> grid = new LinkedHashMap<>();
+		// the cache directory, null if there is none
+		String cacheDir = null;
+		// size of the cache, in megabytes
+		long cacheSize = 1024;
 
 
 		// help info
@@ -65,7 +89,22 @@ class Main
 				"-v\n Number of environment variables. If the value is not specified, 60 is default.\n" +
 				"-e\n Number of selected literals. If the value is not specified, 30 is default.\n" +
 				"-t\n Number of goal-plan trees. If the value is not specified, 10 is default.\n" +
-				"-f\n The output file path to which the set of goal-plan tree is saved. If the value is not specified, gpt.xml is default.\n";
+				"-j\n Number of threads generating the trees. Each tree then uses its own random stream derived from the seed and its index, so the forest is the same whatever the number of threads. The trees are written by another thread while the next ones are generated and encoded, at most 16 trees per thread being held in memory. The parameters of an uncompressed forest are then saved next to it, in <output>.params.json, so that trees can be added to it with -n. If the value is not specified, the trees are generated sequentially from a single random stream.\n" +
+				"-m\n Sampling mode, fast or legacy. The legacy mode draws random samples the same way as former versions, so that their seeds give the same goal-plan trees. If the value is not specified, fast is default.\n" +
+				"-o\n Output format, xml or binary. If the value is not specified, xml is default.\n" +
+				"-r\n Metrics report, on or off. When it is on, the counters and timings of the environment and of each tree are saved next to the output, in <output>.metrics.csv (a row per tree) and <output>.metrics.json (the parameters and the totals). If the value is not specified, off is default.\n" +
+				"-i\n Summary information, on or off. When it is on, every goal and plan of the XML output gets a Summary element, its last child, with the literals its execution must or may require (must-precondition, may-precondition) and must or may bring about (must-effect, may-effect). If the value is not specified, off is default.\n" +
+				"-z\n Number of threads compressing the XML output in gzip format, block by block. The forest readers open compressed files directly. If the value is not specified, the output is not compressed.\n" +
+				"-f\n The output file path to which the set of goal-plan tree is saved. If the value is not specified, gpt.xml is default.\n" +
+				"-b\n Batch file. Each non-empty line not starting with # is a configuration, given by the flags above except -f, and overrides the values given on the command line. All the configurations are generated in the same run.\n" +
+				"-c\n Number of configurations of a batch, or of requests to the service, generated at the same time. If the value is not specified, 1 is default for a batch and the number of processors for the service.\n" +
+				"-w\n Port of the service. Instead of generating a forest, the forests are generated on request, over HTTP on the loopback interface: GET /forest?s=7&d=4&o=binary returns the forest of the flags given in the query, without their dash, the other flags keeping the values given on the command line. The -j and -z threads of a request are capped at those given on the command line, at least one. An XML forest is sent as it is generated. Requests beyond five times the -c limit are refused. Port 0 picks a free port.\n" +
+				"-n\n Number of trees added to the forest saved at the -f path, instead of generating a new forest. The trees of the forest must have been generated with -j, from the same parameters but for the number of trees, which is read from the forest. The parameters are checked against those saved in <forest>.params.json, and no tree is added if the stream mode, the sampling mode, the format or any of -s, -d, -g, -p, -a, -l, -v, -e and -i differs: only the new trees are generated. An XML forest, whose environment comes first, is written again with its former trees copied as they are, which takes time in proportion to the whole file, and becomes the same file as if it had been generated with all the trees. A binary forest is extended in place, in time in proportion to the new trees: it gets the same variables, initial values and trees as if it had been generated with all of them, but the goal literals of the new trees come after the environment variables, so the indexes of the variables, and the bytes of the file, differ. Compressed forests cannot be extended.\n" +
+				"-x\n Number of shards. Instead of a single file, the forest is split into shards, each a forest file of its own with the environment and a range of the trees, saved next to the -f path, e.g. gpt-shard0.xml to gpt-shard3.xml for gpt.xml, and listed with their range of trees and their SHA-256 in a manifest, e.g. gpt.xml.manifest.json. With -j, the shards are written in parallel.\n" +
+				"-k\n Cache directory. A forest generated with the same parameters and the same version of the generator as a forest of the cache is not generated again: the output is linked to the cached file, or copied if it cannot be linked. If the value is not specified, the forests are not cached.\n" +
+				"-q\n Size of the cache, in megabytes. When the cached forests exceed it, the least recently used ones are removed. If the value is not specified, 1024 is default.\n" +
+				"\n" +
+				"Any of the flags -s to -z can be given a comma-separated list of values, on the command line or in a batch file: a forest is then generated for every combination of values. The forests of a batch are saved next to the -f path, whose name is extended with the parameters of each forest, including the -j, -z and -r values given, and whose extension becomes that of the format, .xml, .xml.gz or .bin, e.g. gpt-s100-d3-g3-p3-a3-l0.0-v60-e30-t10.xml or gpt-s100-d3-g3-p3-a3-l0.0-v60-e30-t10-z2.xml.gz. A configuration which fails leaves no file.\n";
 
 		// parser for each input parameters
 		int i = 0;
@@ -82,162 +121,591 @@ class Main
 			}
 			// get the flag
 			char flag = arg.charAt(1);
+			// h for help
+			if(flag == 'h') {
+				System.out.println(help);
+				System.exit(0);
+			}
+			if(i == args.length) {
+				System.out.println(arg + " must be followed by a value");
+				System.exit(1);
+			}
+			String value = args[i++];
 			switch (flag){
-				// h for help
-				case 'h': // help
-					System.out.println(help);
-					System.exit(0);
-
-				case 's': // seed
+				case 'f': // path
+					path = value;break;
+				case 'b': // batch file
+					batch = value;break;
+				case 'c': // number of concurrent configurations
 					try {
-						seed = Integer.parseInt(args[i++]);break;
+						concurrent = Integer.parseInt(value);
 					}
-					catch(Exception e) {
-						System.out.println("Seed must be an integer");
+					catch(Exception e){
+						System.out.println("The number of concurrent configurations must be an integer");
 						System.exit(1);
 					}
-
-				case 'd': // depth
-					try {
-						sy_depth = Integer.parseInt(args[i++]);break;
-					}
-					catch(Exception e) {
-						System.out.println("Depth must be an integer");
+					if(concurrent <= 0) {
+						System.out.println("The number of concurrent configurations must be greater than 0");
 						System.exit(1);
 					}
-
-				case 'g': // number of goals
+					break;
+				case 'w': // port of the service
 					try {
-						sy_num_goal = Integer.parseInt(args[i++]);break;
+						port = Integer.parseInt(value);
 					}
-					catch(Exception e) {
-						System.out.println("The number of goals in each plan must be an integer");
+					catch(Exception e){
+						System.out.println("The port of the service must be an integer");
 						System.exit(1);
 					}
-				case 'p': // number of plans
-					try {
-						sy_num_plan = Integer.parseInt(args[i++]);break;
-					}
-					catch(Exception e) {
-						System.out.println("The number of plans to achieve each goal must be an integer");
+					if(port < 0 || port > 65535) {
+						System.out.println("The port of the service must be between 0 and 65535");
 						System.exit(1);
 					}
-				case 'a': // number of actions
+					break;
+				case 'n': // number of trees added
 					try {
-						sy_num_action = Integer.parseInt(args[i++]);break;
+						added = Integer.parseInt(value);
+					}
+					catch(Exception e){
+						System.out.println("The number of trees added must be an integer");
+						System.exit(1);
 					}
-					catch(Exception e) {
-						System.out.println("The number of actions in each plan must be an integer");
+					if(added <= 0) {
+						System.out.println("The number of trees added must be greater than 0");
 						System.exit(1);
 					}
-				case 'v': // number of variables
+					break;
+				case 'x': // number of shards
 					try {
-						sy_num_var = Integer.parseInt(args[i++]);break;
+						shards = Integer.parseInt(value);
 					}
-					catch(Exception e) {
-						System.out.println("The number of environment variables must be an integer");
+					catch(Exception e){
+						System.out.println("The number of shards must be an integer");
 						System.exit(1);
 					}
-				case 'e': // selected number of variables
+					if(shards <= 0) {
+						System.out.println("The number of shards must be greater than 0");
+						System.exit(1);
+					}
+					break;
+				case 'k': // cache directory
+					cacheDir = value;break;
+				case 'q': // size of the cache
 					try {
-						sy_num_selected = Integer.parseInt(args[i++]);break;
+						cacheSize = Long.parseLong(value);
 					}
-					catch(Exception e) {
-						System.out.println("The number of selected environment variables must be an integer");
+					catch(Exception e){
+						System.out.println("The size of the cache must be an integer");
 						System.exit(1);
 					}
-				case 'l': // probability of a plan being leaf plan
-					try {
-						sy_prob_leaf = Double.parseDouble(args[i++]);break;
+					if(cacheSize <= 0) {
+						System.out.println("The size of the cache must be greater than 0");
+						System.exit(1);
 					}
-					catch(Exception e) {
-						System.out.println("The probability of a plan being leaf plan must be a double");
+					break;
+				default:
+					if(!Parameters.isParameter(flag)) {
+						System.out.println(arg + " is not a valid flag");
+						System.out.println(help);
 						System.exit(1);
 					}
-				case 't': // number of trees
 					try {
-						num_tree = Integer.parseInt(args[i++]);break;
+						if(value.indexOf(',') >= 0) {
+							// a list of values, each of them is checked on its own
+							for(String v : value.split(",", -1)) {
+								new Parameters(params).set(flag, v.trim());
+							}
+							grid.put(flag, value);
+						}
+						else {
+							grid.remove(flag);
+							params.set(flag, value);
+							// check the value of the input arguments
+							params.validate();
+						}
 					}
-					catch(Exception e){
-						System.out.println("The number of goal-plan tree must be an integer");
+					catch(IllegalArgumentException e) {
+						System.out.println(e.getMessage());
 						System.exit(1);
 					}
-				case 'f': // path
-					path = args[i++];break;
-				default:
-					System.out.println(arg + " is not a valid flag");
-					System.out.println(help);
-					System.exit(1);
 			}
+		}
 
-			// check the value of the input arguments
-			if(sy_depth <= 0) {
-				System.out.println("Depth must be greater than 0");
+		ForestCache cache = null;
+		if(cacheDir != null)
+		{
+			try {
+				cache = new ForestCache(cacheDir, cacheSize << 20);
+			}
+			catch(IOException ex) {
+				System.out.println("Cannot open the cache directory " + cacheDir + ": " + ex.getMessage());
 				System.exit(1);
 			}
-			if(sy_num_goal <= 0) {
-				System.out.println("Maximum number of goals must be greater than 0");
+		}
+
+		if(added > 0)
+		{
+			if(batch != null || !grid.isEmpty() || port >= 0 || shards > 0) {
+				System.out.println("Trees are added to a single forest, -n cannot be given a batch, the service or shards");
 				System.exit(1);
 			}
-			if(sy_num_plan <= 0) {
-				System.out.println("Maximum number of plans must be greater than 0");
+			try {
+				int total = ForestAppender.append(params, path, added);
+				System.out.println(added + " trees were added to " + path + ", which has " + total + " trees");
+			}
+			catch(IllegalArgumentException ex) {
+				System.out.println(ex.getMessage());
 				System.exit(1);
 			}
-			if(sy_num_action < 0) {
-				System.out.println("Maximum number of actions must be greater than 0");
+			catch(NoSuchFileException ex) {
+				System.out.println("There is no forest at " + path);
 				System.exit(1);
 			}
-			if(sy_num_var <= 0) {
-				System.out.println("Total number of variables must be greater than 0");
+			catch(IOException ex) {
+				System.out.println("Cannot add trees to " + path + ": " + ex.getMessage());
 				System.exit(1);
 			}
-			if(sy_num_selected <= 0) {
-						System.out.println("The number of selected variables must be greater than 0");
-						System.exit(1);
+			return;
+		}
+
+		if(shards > 0)
+		{
+			if(batch != null || !grid.isEmpty() || port >= 0 || cache != null) {
+				System.out.println("A forest is split into shards on its own, -x cannot be given a batch, the service or a cache");
+				System.exit(1);
 			}
-			if(sy_num_selected > sy_num_var)
-			{
-				System.out.println("The number of selected variables must be less than or equal to the total number of variables");
+			params.print(System.out);
+			try {
+				ForestManifest manifest = ForestManifest.generate(params, path, shards);
+				System.out.println(manifest.getShards().size() + " shards were created successfully, listed in "
+						+ path + ForestManifest.EXTENSION);
+			}
+			catch(IllegalArgumentException ex) {
+				System.out.println(ex.getMessage());
+				System.exit(1);
+			}
+			catch(IOException ex) {
+				System.out.println("Cannot write the shards of " + path + ": " + ex.getMessage());
+				System.exit(1);
+			}
+			return;
+		}
+
+		if(port >= 0)
+		{
+			if(batch != null || !grid.isEmpty()) {
+				System.out.println("The service generates a forest per request, it cannot be given a batch");
 				System.exit(1);
 			}
-			if(sy_prob_leaf < 0 || sy_prob_leaf > 1){
-				System.out.println("probability must be between 0 and 1");
+			if(params.metrics) {
+				System.out.println("The metrics report is not available from the service");
 				System.exit(1);
 			}
-			if(num_tree <= 0) {
-				System.out.println("Total number of goal-plan tree must be greater than 0");
+			int limit = concurrent > 0 ? concurrent : Runtime.getRuntime().availableProcessors();
+			try {
+				ForestService service = new ForestService(port, limit, params, cache);
+				service.start();
+				System.out.println("Serving forests on http://" + InetAddress.getLoopbackAddress().getHostAddress()
+						+ ":" + service.getPort() + ForestService.CONTEXT + ", " + limit + " at a time");
+			}
+			catch(IOException ex) {
+				System.out.println("Cannot start the service on port " + port + ": " + ex.getMessage());
 				System.exit(1);
 			}
+			return;
+		}
 
-			System.out.println("seed: " + seed);
-			System.out.println("depth: " + sy_depth);
-			System.out.println("tree: " + num_tree);
-			System.out.println("goals: " + sy_num_goal);
-			System.out.println("plans: " + sy_num_plan);
-			System.out.println("actions: " + sy_num_action);
-			System.out.println("var: " + sy_num_var);
-			System.out.println("selected: " + sy_num_selected);
-			System.out.println("prob_leaf: " + sy_prob_leaf);
+		if(batch != null || !grid.isEmpty())
+		{
+			runBatch(params, grid, batch, path, Math.max(concurrent, 1), cache);
+			return;
+		}
 
+		params.print(System.out);
+		System.out.println(params.num_tree);
+		// generate the trees and write them to a file one at a time, so that the forest is never held in memory
+		try
+		{
+			if(generate(params, path, cache)) {
+				System.out.println((params.binary ? "Binary" : "XML") + " File was taken from the cache!");
+			}
+			else {
+				System.out.println((params.binary ? "Binary" : "XML") + " File was created successfully!");
+			}
 		}
-		/**
-		 * the generator
-		 */
-		GPTGenerator gen = new SynthGenerator(seed, sy_depth, num_tree, sy_num_goal, sy_num_plan, sy_num_action, sy_num_var, sy_num_selected, sy_prob_leaf);;
+		catch(IOException ex)
+		{
+			ex.printStackTrace();
+		}
+	}
 
+	/**
+	 * take a forest from the cache, or generate it and add it to the cache, then save its parameters next to it if
+	 * trees can be added to it (see {@link ForestAppender#saveParameters(Parameters, String)}). If the forest cannot
+	 * be saved whole, nothing is left at the path, not even the parameters of a former forest.
+	 * @param params The parameters of the forest
+	 * @param path The file of the forest
+	 * @param cache The cache, null if there is none
+	 * @return whether the forest was taken from the cache
+	 */
+	static boolean generate(Parameters params, String path, ForestCache cache) throws IOException
+	{
+		try
+		{
+			boolean cached = produce(params, path, cache);
+			ForestAppender.saveParameters(params, path);
+			return cached;
+		}
+		catch(Throwable e)
+		{
+			discard(Paths.get(path));
+			Files.deleteIfExists(Paths.get(path + ForestAppender.EXTENSION));
+			throw e;
+		}
+	}
 
-		HashMap<String, Literal> environment = gen.genEnvironment();
-		// generate the tree
-		ArrayList<GoalNode> goalForests = new ArrayList<>();
+	/**
+	 * take a forest from the cache, or generate it and add it to the cache
+	 * @return whether the forest was taken from the cache
+	 */
+	private static boolean produce(Parameters params, String path, ForestCache cache) throws IOException
+	{
+		if(cache == null)
+		{
+			generate(params, path);
+			return false;
+		}
+		// the metrics report the generation of the forest, which must then take place
+		if(!params.metrics)
+		{
+			Path file = cache.get(params);
+			if(file != null)
+			{
+				try {
+					ForestCache.link(file, path);
+					return true;
+				}
+				catch(NoSuchFileException e) {
+					// removed by another run since it was found, it is generated again
+				}
+			}
+			ForestCache.link(cache.forest(params), path);
+		}
+		else
+		{
+			generate(params, path);
+			ForestCache.link(cache.put(params, tmp -> Files.copy(Paths.get(path), tmp, StandardCopyOption.REPLACE_EXISTING)), path);
+		}
+		return false;
+	}
 
-		System.out.println(num_tree);
-		for(int k = 0; k < num_tree; k++)
+	/**
+	 * remove a regular file before it is written again, rather than overwrite it: it may be linked to a forest of
+	 * a cache, which must stay unchanged
+	 * @param path The file
+	 */
+	static void replace(Path path) throws IOException
+	{
+		if(Files.isRegularFile(path, LinkOption.NOFOLLOW_LINKS))
 		{
-			goalForests.add(gen.genTopLevelGoal(k));
+			Files.delete(path);
+		}
+	}
+
+	/**
+	 * remove the file of a forest which could not be written whole, so that it is not taken for a forest
+	 * @param path The file, only removed if it is a regular file
+	 */
+	static void discard(Path path) throws IOException
+	{
+		replace(path);
+	}
+
+	/**
+	 * generate a forest and write it to a file, which is removed if the forest cannot be written whole
+	 * @param params The parameters of the forest
+	 * @param path The file to write to
+	 */
+	static void generate(Parameters params, String path) throws IOException
+	{
+		replace(Paths.get(path));
+		// the counters and timings, if they are saved
+		GenerationMetrics metrics = params.metrics ? new GenerationMetrics() : null;
+		try(ForestWriter writer = params.binary ? BinaryForestWriter.open(path)
+				: StreamingXMLWriter.open(path, params.compression))
+		{
+			generate(params, writer, metrics);
+		}
+		catch(Throwable e)
+		{
+			discard(Paths.get(path));
+			throw e;
+		}
+		if(metrics != null)
+		{
+			metrics.save(path, params);
+		}
+	}
+
+	/**
+	 * generate a forest and write it, the writer being left open, or aborted if the generation fails
+	 * @param params The parameters of the forest
+	 * @param writer The writer
+	 * @param metrics The counters and timings of the generation, null if they are not collected
+	 */
+	static void generate(Parameters params, ForestWriter writer, GenerationMetrics metrics) throws IOException
+	{
+		try
+		{
+			/**
+			 * the generator
+			 */
+			SynthGenerator gen = params.generator();
+			gen.setMetrics(metrics);
+
+			LiteralTable environment = gen.genEnvironment();
+
+			writer.writeEnvironment(environment);
+			generate(params, gen, environment, 0, params.num_tree, writer, metrics);
+		}
+		catch(Throwable e)
+		{
+			writer.abort();
+			throw e;
+		}
+	}
+
+	/**
+	 * generate trees and write them, the environment having been written
+	 * @param params The parameters of the forest
+	 * @param gen The generator of the forest
+	 * @param environment The environment of the forest
+	 * @param from The index of the first tree. Unless the trees have their own random streams, the trees before it
+	 * must have been generated by the same generator, as the trees of the single stream depend on them
+	 * @param to The index following the last tree
+	 * @param writer The writer, aborted if the generation fails, whatever the failure, so that a forest missing
+	 * trees is never completed
+	 * @param metrics The counters and timings of the generation, null if they are not collected
+	 */
+	static void generate(Parameters params, SynthGenerator gen, LiteralTable environment, int from, int to,
+						 ForestWriter writer, GenerationMetrics metrics) throws IOException
+	{
+		try
+		{
+			generateTrees(params, gen, environment, from, to, writer, metrics);
+		}
+		catch(Throwable e)
+		{
+			writer.abort();
+			throw e;
+		}
+	}
+
+	private static void generateTrees(Parameters params, SynthGenerator gen, LiteralTable environment, int from,
+									  int to, ForestWriter writer, GenerationMetrics metrics) throws IOException
+	{
+		String format = params.binary ? "binary" : "xml";
+		if(params.threads > 0)
+		{
+			// each tree is generated and encoded on a thread of the pipeline while the trees before it are written
+			try(ForestPipeline pipeline = new ForestPipeline(writer, params.threads, params.threads * 16,
+					(index, nanos) -> written(metrics, index, nanos, false, format)))
+			{
+				for(int k = from; k < to; k++)
+				{
+					int index = k;
+					pipeline.submit(index, () -> {
+						GoalNode tree = gen.genIndependentGoal(index);
+						if(params.summaries)
+						{
+							Summary.compute(tree, environment);
+						}
+						return tree;
+					});
+				}
+			}
+		}
+		else
+		{
+			// write each tree as its nodes are generated, so that not even a whole tree is held in memory
+			TimedSink sink = new TimedSink(writer.treeSink());
+			TreeSink generated = params.summaries ? new SummarySink(sink, environment) : sink;
+			for(int k = from; k < to; k++)
+			{
+				gen.genTopLevelGoal(k, generated);
+				written(metrics, k, sink.takeNanos(), true, format);
+			}
+		}
+	}
+
+	/**
+	 * record the time a tree spent in the writer
+	 * @param metrics The metrics of the forest, null if they are not saved
+	 * @param index The index of the tree
+	 * @param nanos The time spent in the writer
+	 * @param interleaved Whether the tree was written as it was generated
+	 * @param format The output format
+	 */
+	private static void written(GenerationMetrics metrics, int index, long nanos, boolean interleaved, String format)
+	{
+		GenerationEvents.Write event = new GenerationEvents.Write();
+		if(event.shouldCommit())
+		{
+			event.index = index;
+			event.format = format;
+			event.writeTime = nanos;
+			event.commit();
+		}
+		if(metrics != null)
+		{
+			metrics.written(index, nanos, interleaved);
+		}
+	}
+
+	/**
+	 * generate every configuration of a batch. All the configurations are read and checked before any forest is
+	 * generated, so an invalid one stops the batch at once.
+	 * @param params The parameters given on the command line
+	 * @param grid The flags given a list of values on the command line
+	 * @param batch The batch file, null if the batch is only the grid of the command line
+	 * @param path The output path, extended with the parameters of each configuration
+	 * @param concurrent The number of configurations generated at the same time
+	 * @param cache The cache, null if there is none
+	 */
+	private static void runBatch(Parameters params, Map<Character, String> grid, String batch, String path,
+								 int concurrent, ForestCache cache)
+	{
+		ArrayList<Parameters> configurations = new ArrayList<>();
+		if(batch == null)
+		{
+			configurations.addAll(expand(params, grid, "The command line"));
+		}
+		else
+		{
+			try(BufferedReader in = Files.newBufferedReader(Paths.get(batch)))
+			{
+				String line;
+				int number = 0;
+				while((line = in.readLine()) != null)
+				{
+					number++;
+					line = line.trim();
+					if(line.isEmpty() || line.startsWith("#")) {
+						continue;
+					}
+					// the flags of the line override those of the command line
+					LinkedHashMap<Character, String> flags = new LinkedHashMap<>(grid);
+					String[] tokens = line.split("\\s+");
+					for(int k = 0; k < tokens.length; k += 2)
+					{
+						String arg = tokens[k];
+						if(arg.length() != 2 || arg.charAt(0) != '-' || !Parameters.isParameter(arg.charAt(1))) {
+							System.out.println("Line " + number + " of " + batch + ": " + arg + " is not a valid flag in a batch");
+							System.exit(1);
+						}
+						if(k + 1 == tokens.length) {
+							System.out.println("Line " + number + " of " + batch + ": " + arg + " must be followed by a value");
+							System.exit(1);
+						}
+						flags.remove(arg.charAt(1));
+						flags.put(arg.charAt(1), tokens[k + 1]);
+					}
+					configurations.addAll(expand(params, flags, "Line " + number + " of " + batch));
+				}
+			}
+			catch(IOException ex)
+			{
+				System.out.println("Cannot read the batch file " + batch + ": " + ex.getMessage());
+				System.exit(1);
+			}
+		}
+
+		// every configuration must have its own file
+		HashSet<String> paths = new HashSet<>();
+		for(Parameters p : configurations)
+		{
+			if(!paths.add(p.batchPath(path))) {
+				System.out.println("Several configurations would be saved to " + p.batchPath(path));
+				System.exit(1);
+			}
+		}
+
+		System.out.println(configurations.size() + " configurations, " + concurrent + " at a time");
+		ExecutorService pool = Executors.newFixedThreadPool(concurrent);
+		AtomicInteger failed = new AtomicInteger();
+		for(Parameters p : configurations)
+		{
+			String file = p.batchPath(path);
+			pool.execute(() -> {
+				try {
+					if(generate(p, file, cache)) {
+						System.out.println(file + " was taken from the cache!");
+					}
+					else {
+						System.out.println(file + " was created successfully!");
+					}
+				}
+				catch(IOException | RuntimeException ex) {
+					failed.incrementAndGet();
+					System.out.println(file + " could not be created: " + ex);
+				}
+			});
+		}
+		pool.shutdown();
+		try {
+			pool.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+		}
+		catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if(failed.get() > 0) {
+			System.out.println(failed.get() + " of " + configurations.size() + " configurations failed");
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * @param base The parameters not given in the flags
+	 * @param flags The values of the flags, each a comma-separated list
+	 * @param origin Where the flags come from, for the error messages
+	 * @return a configuration for every combination of the values, each of them checked
+	 */
+	private static ArrayList<Parameters> expand(Parameters base, Map<Character, String> flags, String origin)
+	{
+		ArrayList<Parameters> result = new ArrayList<>();
+		result.add(new Parameters(base));
+		try
+		{
+			for(Map.Entry<Character, String> flag : flags.entrySet())
+			{
+				ArrayList<Parameters> next = new ArrayList<>();
+				for(Parameters p : result)
+				{
+					for(String value : flag.getValue().split(",", -1))
+					{
+						Parameters q = new Parameters(p);
+						q.set(flag.getKey(), value.trim());
+						next.add(q);
+					}
+				}
+				result = next;
+			}
+		}
+		catch(IllegalArgumentException e)
+		{
+			System.out.println(origin + ": " + e.getMessage());
+			System.exit(1);
+		}
+		for(Parameters p : result)
+		{
+			try {
+				p.validate();
+			}
+			catch(IllegalArgumentException e) {
+				System.out.println(origin + ", " + p.toFlags() + ": " + e.getMessage());
+				System.exit(1);
+			}
 		}
-		// write the set of goal plan tree to an XML file
-		XMLWriter wxf = new XMLWriter();
-		wxf.CreateXML(environment, goalForests, path);
+		return result;
 	}
-	
 }
@@ -0,0 +1,250 @@
+/*
+ * Copyright 2021 Yuan Yao
+ * University of Nottingham
+ * Zhejiang University of Technology
+ * Email: yaoyuan@zjut.edu.cn (yuanyao1990yy@icloud.com)
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details
+ *  <http://www.gnu.org/licenses/gpl-3.0.html>.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uno.gpt.generators;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * @version 1.0
+ *
+ * A channel compressing what is written to it in gzip format, several blocks at a time. The data is cut into blocks
+ * of {@link #BLOCK_SIZE} bytes, each block is compressed on a thread of a pool into a complete gzip member and the
+ * members are written in order, so the result is a multi-member gzip file that any gzip reader decompresses as a
+ * whole. Like pigz, the compression scales with the number of threads; unlike pigz, the blocks do not share a
+ * dictionary, so each member can be decompressed on its own.
+ *
+ * The header of each member has an extra field, subfield "GP" holding the size of the whole member, which lets
+ * {@link BlockGzipIndex} find the members of a file without decompressing it.
+ */
+class ParallelGzipChannel implements WritableByteChannel
+{
+	/** size of the uncompressed blocks */
+	static final int BLOCK_SIZE = 1 << 18;
+
+	/** size of the header of a member, with its extra field */
+	static final int HEADER_SIZE = 20;
+
+	/** id of the extra subfield holding the size of the member */
+	static final byte SI1 = 'G', SI2 = 'P';
+
+	/** the channel the members are written to */
+	final private WritableByteChannel channel;
+
+	/** the compressing threads */
+	final private ExecutorService pool;
+
+	/** the members being compressed, in order */
+	final private ArrayDeque<Future<byte[]>> pending = new ArrayDeque<>();
+
+	/** maximum number of blocks being compressed, which bounds the memory used */
+	final private int maxPending;
+
+	/** the deflaters not in use, at most one per compressing thread, whose native memory is freed on close */
+	final private ArrayDeque<Deflater> deflaters = new ArrayDeque<>();
+
+	/** whether the deflaters have been freed, a deflater handed back afterwards being freed at once */
+	private boolean ended;
+
+	/** the block being filled */
+	private byte[] block = new byte[BLOCK_SIZE];
+
+	/** number of bytes in the block being filled */
+	private int filled;
+
+	private boolean open = true;
+
+	/**
+	 * @param channel The channel to write the compressed data to, closed with this channel
+	 * @param threads The number of compressing threads
+	 */
+	ParallelGzipChannel(WritableByteChannel channel, int threads)
+	{
+		this.channel = channel;
+		this.maxPending = threads * 2;
+		this.pool = Executors.newFixedThreadPool(threads, r -> {
+			Thread t = new Thread(r, "gzip");
+			t.setDaemon(true);
+			return t;
+		});
+	}
+
+	@Override
+	public int write(ByteBuffer src) throws IOException
+	{
+		if (!open) {
+			throw new ClosedChannelException();
+		}
+		int written = src.remaining();
+		while (src.hasRemaining()) {
+			int n = Math.min(src.remaining(), BLOCK_SIZE - filled);
+			src.get(block, filled, n);
+			filled += n;
+			if (filled == BLOCK_SIZE) {
+				submit();
+			}
+		}
+		return written;
+	}
+
+	@Override
+	public boolean isOpen()
+	{
+		return open;
+	}
+
+	/**
+	 * compress the last block, write all the members and close the underlying channel
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		if (!open) {
+			return;
+		}
+		open = false;
+		try {
+			if (filled > 0) {
+				submit();
+			}
+			while (!pending.isEmpty()) {
+				drain();
+			}
+		}
+		finally {
+			pool.shutdownNow();
+			synchronized (deflaters) {
+				ended = true;
+				for (Deflater deflater : deflaters) {
+					deflater.end();
+				}
+				deflaters.clear();
+			}
+			channel.close();
+		}
+	}
+
+	/**
+	 * hand the current block to the pool, waiting for the oldest member if too many are pending
+	 */
+	private void submit() throws IOException
+	{
+		byte[] data = block;
+		int length = filled;
+		pending.add(pool.submit(() -> compress(data, length)));
+		block = new byte[BLOCK_SIZE];
+		filled = 0;
+		while (pending.size() > maxPending) {
+			drain();
+		}
+	}
+
+	/**
+	 * write the oldest member once it is compressed
+	 */
+	private void drain() throws IOException
+	{
+		byte[] member;
+		try {
+			member = pending.poll().get();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		}
+		catch (ExecutionException e) {
+			throw new IOException("Compression failed", e.getCause());
+		}
+		ByteBuffer buffer = ByteBuffer.wrap(member);
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+
+	/**
+	 * compress a block into a gzip member
+	 */
+	private byte[] compress(byte[] data, int length)
+	{
+		Deflater deflater;
+		synchronized (deflaters) {
+			deflater = deflaters.poll();
+		}
+		if (deflater == null) {
+			deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+		}
+		byte[] out = new byte[HEADER_SIZE + length / 2 + 64];
+		int size = HEADER_SIZE;
+		try {
+			deflater.reset();
+			deflater.setInput(data, 0, length);
+			deflater.finish();
+			while (!deflater.finished()) {
+				if (size == out.length) {
+					out = Arrays.copyOf(out, out.length * 2);
+				}
+				size += deflater.deflate(out, size, out.length - size);
+			}
+		}
+		finally {
+			synchronized (deflaters) {
+				if (ended) {
+					deflater.end();
+				}
+				else {
+					deflaters.push(deflater);
+				}
+			}
+		}
+		out = Arrays.copyOf(out, size + 8);
+		CRC32 crc = new CRC32();
+		crc.update(data, 0, length);
+		int total = size + 8;
+		// header: magic, deflate, FEXTRA, no time, unknown OS, then the extra field
+		byte[] header = {0x1f, (byte) 0x8b, 8, 4, 0, 0, 0, 0, 0, (byte) 255, 8, 0, SI1, SI2, 4, 0};
+		System.arraycopy(header, 0, out, 0, header.length);
+		putInt(out, 16, total);
+		// trailer: CRC-32 and uncompressed size
+		putInt(out, size, (int) crc.getValue());
+		putInt(out, size + 4, length);
+		return out;
+	}
+
+	private static void putInt(byte[] b, int off, int v)
+	{
+		b[off] = (byte) v;
+		b[off + 1] = (byte) (v >>> 8);
+		b[off + 2] = (byte) (v >>> 16);
+		b[off + 3] = (byte) (v >>> 24);
+	}
+}
@@ -0,0 +1,301 @@
+/*
+ * Copyright 2021 Yuan Yao
+ * University of Nottingham
+ * Zhejiang University of Technology
+ * Email: yaoyuan@zjut.edu.cn (yuanyao1990yy@icloud.com)
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details
+ *  <http://www.gnu.org/licenses/gpl-3.0.html>.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uno.gpt.generators;
+
+import java.io.PrintStream;
+
+/**
+ * @version 1.0
+ *
+ * The parameters of one forest: the generator parameters, the sampling mode, the number of generating threads and the
+ * output format. Each parameter is set from its command-line flag, and {@link #validate()} applies the same checks to
+ * every configuration, whether it comes from the command line or from a batch.
+ */
+class Parameters
+{
+	int seed = AbstractGenerator.def_seed,
+			num_tree = AbstractGenerator.def_num_tree,
+			depth = SynthGenerator.def_depth,
+			num_goal = SynthGenerator.def_num_goal,
+			num_plan = SynthGenerator.def_num_plan,
+			num_action = SynthGenerator.def_num_action,
+			num_var = SynthGenerator.def_num_var,
+			num_selected = SynthGenerator.def_num_selected;
+
+	double prob_leaf = SynthGenerator.def_prob_leaf;
+
+	/** number of generating threads, 0 for the sequential generation from a single random stream */
+	int threads = 0;
+
+	/** whether random samples are drawn the same way as in former versions */
+	boolean legacy_sampling = false;
+
+	/** whether the forest is saved in the binary format instead of XML */
+	boolean binary = false;
+
+	/** number of threads compressing the output, 0 for an uncompressed output */
+	int compression = 0;
+
+	/** whether the counters and timings of the generation are saved next to the output */
+	boolean metrics = false;
+
+	/** whether the summary information of the goals and plans is saved in the output */
+	boolean summaries = false;
+
+	Parameters()
+	{
+	}
+
+	Parameters(Parameters other)
+	{
+		this.seed = other.seed;
+		this.num_tree = other.num_tree;
+		this.depth = other.depth;
+		this.num_goal = other.num_goal;
+		this.num_plan = other.num_plan;
+		this.num_action = other.num_action;
+		this.num_var = other.num_var;
+		this.num_selected = other.num_selected;
+		this.prob_leaf = other.prob_leaf;
+		this.threads = other.threads;
+		this.legacy_sampling = other.legacy_sampling;
+		this.binary = other.binary;
+		this.compression = other.compression;
+		this.metrics = other.metrics;
+		this.summaries = other.summaries;
+	}
+
+	/**
+	 * @param flag A flag, without the dash
+	 * @return whether the flag sets one of these parameters
+	 */
+	static boolean isParameter(char flag)
+	{
+		return "sdgpalvetjmozri".indexOf(flag) >= 0;
+	}
+
+	/**
+	 * set a parameter from its flag
+	 * @param flag The flag, without the dash
+	 * @param value The value given to the flag
+	 * @throws IllegalArgumentException if the value is not valid for the flag
+	 */
+	void set(char flag, String value)
+	{
+		switch (flag) {
+			case 's': seed = parseInt(value, "Seed must be an integer"); break;
+			case 'd': depth = parseInt(value, "Depth must be an integer"); break;
+			case 'g': num_goal = parseInt(value, "The number of goals in each plan must be an integer"); break;
+			case 'p': num_plan = parseInt(value, "The number of plans to achieve each goal must be an integer"); break;
+			case 'a': num_action = parseInt(value, "The number of actions in each plan must be an integer"); break;
+			case 'v': num_var = parseInt(value, "The number of environment variables must be an integer"); break;
+			case 'e': num_selected = parseInt(value, "The number of selected environment variables must be an integer"); break;
+			case 'l':
+				try {
+					prob_leaf = Double.parseDouble(value);
+				}
+				catch (RuntimeException e) {
+					throw new IllegalArgumentException("The probability of a plan being leaf plan must be a double");
+				}
+				break;
+			case 't': num_tree = parseInt(value, "The number of goal-plan tree must be an integer"); break;
+			case 'j': threads = parseInt(value, "The number of threads must be an integer"); break;
+			case 'm':
+				if (!"legacy".equals(value) && !"fast".equals(value)) {
+					throw new IllegalArgumentException("The sampling mode must be fast or legacy");
+				}
+				legacy_sampling = value.equals("legacy");
+				break;
+			case 'o':
+				if (!"xml".equals(value) && !"binary".equals(value)) {
+					throw new IllegalArgumentException("The output format must be xml or binary");
+				}
+				binary = value.equals("binary");
+				break;
+			case 'z': compression = parseInt(value, "The number of compressing threads must be an integer"); break;
+			case 'r':
+				if (!"on".equals(value) && !"off".equals(value)) {
+					throw new IllegalArgumentException("The metrics report must be on or off");
+				}
+				metrics = value.equals("on");
+				break;
+			case 'i':
+				if (!"on".equals(value) && !"off".equals(value)) {
+					throw new IllegalArgumentException("The summary information must be on or off");
+				}
+				summaries = value.equals("on");
+				break;
+			default:
+				throw new IllegalArgumentException("-" + flag + " is not a valid flag");
+		}
+	}
+
+	private static int parseInt(String value, String message)
+	{
+		try {
+			return Integer.parseInt(value);
+		}
+		catch (RuntimeException e) {
+			throw new IllegalArgumentException(message);
+		}
+	}
+
+	/**
+	 * check the value of the parameters
+	 * @throws IllegalArgumentException describing the first invalid parameter
+	 */
+	void validate()
+	{
+		if(depth <= 0) {
+			throw new IllegalArgumentException("Depth must be greater than 0");
+		}
+		if(num_goal <= 0) {
+			throw new IllegalArgumentException("Maximum number of goals must be greater than 0");
+		}
+		if(num_plan <= 0) {
+			throw new IllegalArgumentException("Maximum number of plans must be greater than 0");
+		}
+		if(num_action < 0) {
+			throw new IllegalArgumentException("Maximum number of actions must be greater than 0");
+		}
+		if(num_var <= 0) {
+			throw new IllegalArgumentException("Total number of variables must be greater than 0");
+		}
+		if(num_selected <= 0) {
+			throw new IllegalArgumentException("The number of selected variables must be greater than 0");
+		}
+		if(num_selected > num_var) {
+			throw new IllegalArgumentException("The number of selected variables must be less than or equal to the total number of variables");
+		}
+		if(prob_leaf < 0 || prob_leaf > 1) {
+			throw new IllegalArgumentException("probability must be between 0 and 1");
+		}
+		if(num_tree <= 0) {
+			throw new IllegalArgumentException("Total number of goal-plan tree must be greater than 0");
+		}
+		if(threads < 0) {
+			throw new IllegalArgumentException("The number of threads must be greater than or equal to 0");
+		}
+		if(compression < 0) {
+			throw new IllegalArgumentException("The number of compressing threads must be greater than or equal to 0");
+		}
+		if(compression > 0 && binary) {
+			throw new IllegalArgumentException("The binary output is memory-mapped by its reader and cannot be compressed");
+		}
+		if(summaries && binary) {
+			throw new IllegalArgumentException("The summary information can only be saved in the XML output");
+		}
+	}
+
+	/**
+	 * print the parameters, one per line
+	 */
+	void print(PrintStream out)
+	{
+		out.println("seed: " + seed);
+		out.println("depth: " + depth);
+		out.println("tree: " + num_tree);
+		out.println("goals: " + num_goal);
+		out.println("plans: " + num_plan);
+		out.println("actions: " + num_action);
+		out.println("var: " + num_var);
+		out.println("selected: " + num_selected);
+		out.println("prob_leaf: " + prob_leaf);
+		out.println("threads: " + threads);
+		out.println("sampling: " + (legacy_sampling ? "legacy" : "fast"));
+		out.println("compression: " + compression);
+		out.println("metrics: " + (metrics ? "on" : "off"));
+		out.println("summary: " + (summaries ? "on" : "off"));
+	}
+
+	/**
+	 * @return the flags giving these parameters
+	 */
+	String toFlags()
+	{
+		return "-s " + seed + " -d " + depth + " -g " + num_goal + " -p " + num_plan + " -a " + num_action
+				+ " -l " + prob_leaf + " -v " + num_var + " -e " + num_selected + " -t " + num_tree + " -j " + threads
+				+ " -m " + (legacy_sampling ? "legacy" : "fast") + " -o " + (binary ? "binary" : "xml")
+				+ " -z " + compression + " -r " + (metrics ? "on" : "off")
+				+ " -i " + (summaries ? "on" : "off");
+	}
+
+	/**
+	 * @return the parameters as a JSON object, on a single line
+	 */
+	String toJson()
+	{
+		return "{\"seed\": " + seed + ", \"depth\": " + depth + ", \"trees\": " + num_tree + ", \"goals\": "
+				+ num_goal + ", \"plans\": " + num_plan + ", \"actions\": " + num_action + ", \"variables\": "
+				+ num_var + ", \"selected\": " + num_selected + ", \"prob_leaf\": " + prob_leaf
+				+ ", \"threads\": " + threads + ", \"sampling\": \"" + (legacy_sampling ? "legacy" : "fast")
+				+ "\", \"format\": \"" + (binary ? "binary" : "xml") + "\", \"compression\": " + compression
+				+ ", \"summary\": \"" + (summaries ? "on" : "off") + "\"}";
+	}
+
+	/**
+	 * the name of the file of this configuration in a batch: the given path with the parameters of the forest
+	 * inserted before its extension, which becomes that of the format of the forest (.xml, .xml.gz or .bin), e.g.
+	 * gpt-s100-d3-g3-p3-a3-l0.0-v60-e30-t10.xml for gpt.xml. The number of generating and compressing threads and
+	 * the metrics report are part of the name too, so that configurations only differing by them get their own files.
+	 * @param path The output path given for the batch
+	 * @return The path of the file
+	 */
+	String batchPath(String path)
+	{
+		int slash = Math.max(path.lastIndexOf('/'), path.lastIndexOf(java.io.File.separatorChar));
+		int dot = path.indexOf('.', slash + 1);
+		if (dot < 0) {
+			dot = path.length();
+		}
+		return path.substring(0, dot) + "-s" + seed + "-d" + depth + "-g" + num_goal + "-p" + num_plan
+				+ "-a" + num_action + "-l" + prob_leaf + "-v" + num_var + "-e" + num_selected + "-t" + num_tree
+				+ (legacy_sampling ? "-legacy" : "") + (threads > 0 ? "-j" + threads : "")
+				+ (summaries ? "-summary" : "") + (compression > 0 ? "-z" + compression : "")
+				+ (metrics ? "-metrics" : "") + (binary ? ".bin" : compression > 0 ? ".xml.gz" : ".xml");
+	}
+
+	/**
+	 * the description of the output of this configuration: every parameter changing the bytes of the output file,
+	 * and the versions of the generator and of the format. The number of generating or compressing threads and the
+	 * metrics report are left out, as the same forest is written whatever their values.
+	 * @return the description, from which the key of the forest in a {@link ForestCache} is computed
+	 */
+	String cacheKey()
+	{
+		return "forest " + SynthGenerator.forest_version + " seed " + seed + " depth " + depth + " goals " + num_goal
+				+ " plans " + num_plan + " actions " + num_action + " prob_leaf " + prob_leaf + " var " + num_var
+				+ " selected " + num_selected + " trees " + num_tree
+				+ " sampling " + (legacy_sampling ? "legacy" : "fast") + " streams " + (threads > 0 ? "independent" : "single")
+				+ " summary " + (summaries ? "on" : "off")
+				+ (binary ? " binary " + BinaryForestWriter.VERSION : compression > 0 ? " xml gzip" : " xml");
+	}
+
+	/**
+	 * @return the generator of this configuration
+	 */
+	SynthGenerator generator()
+	{
+		return new SynthGenerator(seed, depth, num_tree, num_goal, num_plan, num_action, num_var, num_selected,
+				prob_leaf, legacy_sampling);
+	}
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2021 Yuan Yao
+ * University of Nottingham
+ * Zhejiang University of Technology
+ * Email: yaoyuan@zjut.edu.cn (yuanyao1990yy@icloud.com)
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details
+ *  <http://www.gnu.org/licenses/gpl-3.0.html>.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uno.gpt.generators;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Random;
+
+/**
+ * @version 1.0
+ *
+ * Draws random samples without replacement in time bounded by the size of the sample.
+ *
+ * In legacy mode the samplers consume the random stream exactly like the rejection loops the generator used before
+ * (redraw until the value is new), so seeded output stays the same; membership is still checked in constant time.
+ * Requests that cannot be satisfied fail in both modes instead of looping forever.
+ */
+class Sampler
+{
+	/** the random stream */
+	final private Random rm;
+
+	/** whether to reproduce the legacy draw sequence */
+	final private boolean legacy;
+
+	Sampler(Random rm, boolean legacy)
+	{
+		this.rm = rm;
+		this.legacy = legacy;
+	}
+
+	/**
+	 * draw k distinct values from [0, n), in random order. Uses a partial Fisher-Yates shuffle over a sparse swap map,
+	 * so it takes O(k) time and space whatever n is.
+	 * @param n the size of the range
+	 * @param k the number of values
+	 * @return the values, in the order they were drawn
+	 */
+	int[] distinct(int n, int k)
+	{
+		check(n, k);
+		int[] result = new int[k];
+		if (legacy) {
+			IntSet seen = new IntSet();
+			for (int i = 0; i < k; ) {
+				int index = rm.nextInt(n);
+				if (!seen.get(index)) {
+					seen.set(index);
+					result[i++] = index;
+				}
+			}
+			return result;
+		}
+		// position -> value for the positions of the virtual array [0, n) that have been swapped
+		HashMap<Integer, Integer> swapped = new HashMap<>(2 * k);
+		for (int i = 0; i < k; i++) {
+			int j = i + rm.nextInt(n - i);
+			int vj = swapped.getOrDefault(j, j);
+			swapped.put(j, swapped.getOrDefault(i, i));
+			result[i] = vj;
+		}
+		return result;
+	}
+
+	/**
+	 * draw a subset of k distinct values from [0, n). Uses Floyd's algorithm, which makes exactly k draws. It takes
+	 * O(k log k) time and O(k) space whatever n is.
+	 * @param n the size of the range
+	 * @param k the number of values
+	 * @return the subset, in increasing order
+	 */
+	int[] subset(int n, int k)
+	{
+		check(n, k);
+		int[] result;
+		if (legacy) {
+			result = distinct(n, k);
+		}
+		else {
+			IntSet drawn = new IntSet();
+			result = new int[k];
+			int count = 0;
+			for (int j = n - k; j < n; j++) {
+				int t = rm.nextInt(j + 1);
+				int value = drawn.get(t) ? j : t;
+				drawn.set(value);
+				result[count++] = value;
+			}
+		}
+		Arrays.sort(result);
+		return result;
+	}
+
+	private static void check(int n, int k)
+	{
+		if (k < 0 || k > n) {
+			throw new IllegalArgumentException("Cannot draw " + k + " distinct values out of " + n);
+		}
+	}
+}
@@ -0,0 +1,656 @@
+/*
+ * Copyright 2021 Yuan Yao
+ * University of Nottingham
+ * Zhejiang University of Technology
+ * Email: yaoyuan@zjut.edu.cn (yuanyao1990yy@icloud.com)
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details
+ *  <http://www.gnu.org/licenses/gpl-3.0.html>.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uno.gpt.generators;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import uno.gpt.structure.*;
+
+/**
+ * @version 1.0
+ *
+ * Writes the environment and the GPT forest straight to a channel, without building a JDOM document first.
+ * The output is byte-for-byte the same as the pretty-printed output of {@link XMLWriter}, while the memory used
+ * by the writer itself is bounded by its buffer, whatever the size of the forest. The goals and plans whose summary
+ * information has been computed also get a Summary element, as their last child, which XMLWriter does not write.
+ *
+ * Usage: {@link #writeEnvironment(LiteralTable)} once, {@link #writeGoal(GoalNode)} for each top-level goal, then
+ * {@link #close()}.
+ */
+class StreamingXMLWriter implements ForestWriter
+{
+	/** size of the output buffer */
+	static final int def_buffer_size = 1 << 16;
+
+	/** size of the buffer encoding a goal apart from the file */
+	static final int encoding_buffer_size = 1 << 13;
+
+	/** line separator and indent used by JDOM's pretty format */
+	private static final byte[] EOL = {'\r', '\n'}, INDENT = {' ', ' '};
+
+	/** the XML declaration */
+	private static final String DECLARATION = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>";
+
+	/** the channel to write to, null when a goal is encoded in the buffer apart from the file */
+	final private WritableByteChannel channel;
+
+	/** the output buffer */
+	private ByteBuffer buffer;
+
+	/** whether the forest element has been opened */
+	private boolean open;
+
+	/** whether the writer has been aborted */
+	private boolean aborted;
+
+	/** the name of a node being rendered from its identity */
+	final private byte[] name = new byte[NodeId.MAX_LENGTH];
+
+	StreamingXMLWriter(WritableByteChannel channel)
+	{
+		this(channel, def_buffer_size);
+	}
+
+	StreamingXMLWriter(WritableByteChannel channel, int bufferSize)
+	{
+		this.channel = channel;
+		this.buffer = ByteBuffer.allocate(bufferSize);
+	}
+
+	/**
+	 * Open a writer on a file, the file is truncated if it exists
+	 * @param path The file to write to
+	 * @return The writer
+	 */
+	static StreamingXMLWriter open(String path) throws IOException
+	{
+		return open(path, 0);
+	}
+
+	/**
+	 * Open a writer on a file, the file is truncated if it exists
+	 * @param path The file to write to
+	 * @param compressionThreads The number of threads compressing the file in gzip blocks (see
+	 * {@link ParallelGzipChannel}), 0 to write it uncompressed
+	 * @return The writer
+	 */
+	static StreamingXMLWriter open(String path, int compressionThreads) throws IOException
+	{
+		WritableByteChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+		if (compressionThreads > 0) {
+			channel = new ParallelGzipChannel(channel, compressionThreads);
+		}
+		return new StreamingXMLWriter(channel);
+	}
+
+	/**
+	 * Write the rich environment and GPT forest, same as {@link XMLWriter#CreateXML(LiteralTable, ArrayList, String)}
+	 * @param environment The full passed environment
+	 * @param goalForests The GPT forest
+	 * @param path The file to write to
+	 */
+	static void CreateXML(LiteralTable environment, ArrayList<GoalNode> goalForests, String path)
+	{
+		try (StreamingXMLWriter writer = open(path))
+		{
+			try {
+				writer.writeEnvironment(environment);
+				for (GoalNode gl : goalForests) {
+					writer.writeGoal(gl);
+				}
+			}
+			catch (IOException | RuntimeException e) {
+				writer.abort();
+				throw e;
+			}
+			System.out.println("XML File was created successfully!");
+		}
+		catch(IOException ex)
+		{
+			ex.printStackTrace();
+		}
+	}
+
+	/**
+	 * write the declaration, open the forest and write the environment, its variables in the order of their indexes.
+	 * The variables are written one at a time, without creating their literals.
+	 * @param environment The environment
+	 */
+	@Override
+	public void writeEnvironment(LiteralTable environment) throws IOException
+	{
+		if (open) {
+			throw new IllegalStateException("The environment has already been written");
+		}
+		open = true;
+		ascii(DECLARATION);
+		put(EOL);
+		ascii("<Forest>");
+		put(EOL);
+		indent(1);
+		if (environment.size() == 0) {
+			ascii("<Environment />");
+			put(EOL);
+			return;
+		}
+		ascii("<Environment>");
+		put(EOL);
+		for (int i = 0; i < environment.size(); i++) {
+			indent(2);
+			ascii("<Literal name=\"");
+			escaped(environment.getId(i));
+			ascii("\" value=\"");
+			ascii(environment.getInitialState(i) ? "true" : "false");
+			ascii("\" />");
+			put(EOL);
+		}
+		indent(1);
+		ascii("</Environment>");
+		put(EOL);
+	}
+
+	/**
+	 * write a top-level goal
+	 * @param gl The goal
+	 */
+	@Override
+	public void writeGoal(GoalNode gl) throws IOException
+	{
+		if (!open) {
+			throw new IllegalStateException("The environment must be written before any goal");
+		}
+		writeGoal(gl, 1);
+	}
+
+	/**
+	 * write top-level goals already written by another writer, copying their bytes as they are
+	 * @param source The file they were written to
+	 * @param from The position of the first of them in the file
+	 * @param to The position following the last of them in the file
+	 */
+	void copyGoals(FileChannel source, long from, long to) throws IOException
+	{
+		if (!open) {
+			throw new IllegalStateException("The environment must be written before any goal");
+		}
+		flush();
+		ByteBuffer copied = ByteBuffer.allocate(buffer.capacity());
+		for (long pos = from; pos < to; ) {
+			copied.clear().limit((int) Math.min(copied.capacity(), to - pos));
+			int n = source.read(copied, pos);
+			if (n < 0) {
+				throw new EOFException("The forest ends before position " + to);
+			}
+			pos += n;
+			copied.flip();
+			while (copied.hasRemaining()) {
+				channel.write(copied);
+			}
+		}
+	}
+
+	/**
+	 * encode a top-level goal apart from the file, as {@link #writeGoal(GoalNode)} would write it
+	 * @param gl The goal
+	 * @return the encoded goal
+	 */
+	@Override
+	public Encoded encode(GoalNode gl) throws IOException
+	{
+		if (!open) {
+			throw new IllegalStateException("The environment must be written before any goal");
+		}
+		StreamingXMLWriter encoder = new StreamingXMLWriter(null, encoding_buffer_size);
+		encoder.writeGoal(gl, 1);
+		return new Encoded(encoder.buffer.array(), encoder.buffer.position(), Encoded.NO_REFERENCES, 0);
+	}
+
+	/**
+	 * write a top-level goal encoded by {@link #encode(GoalNode)}
+	 * @param goal The encoded goal
+	 */
+	@Override
+	public void writeEncoded(Encoded goal) throws IOException
+	{
+		if (!open) {
+			throw new IllegalStateException("The environment must be written before any goal");
+		}
+		if (goal.length <= buffer.remaining()) {
+			buffer.put(goal.bytes, 0, goal.length);
+			return;
+		}
+		flush();
+		ByteBuffer bytes = ByteBuffer.wrap(goal.bytes, 0, goal.length);
+		while (bytes.hasRemaining()) {
+			channel.write(bytes);
+		}
+	}
+
+	/**
+	 * @return a sink writing a top-level goal as its nodes are handed over, each element being written as soon as
+	 * it is started
+	 */
+	@Override
+	public TreeSink treeSink()
+	{
+		return new Sink();
+	}
+
+	/**
+	 * write goal
+	 * @param gl The target goal
+	 * @param level The nesting level of the goal
+	 */
+	private void writeGoal(GoalNode gl, int level) throws IOException
+	{
+		startGoal(gl, level);
+		ArrayList<PlanNode> plans = gl.getPlans();
+		if (!startChildren(plans.size() + (gl.getSummary() == null ? 0 : 1))) {
+			return;
+		}
+		for (PlanNode pl : plans) {
+			writePlan(pl, level + 1);
+		}
+		writeSummary(gl.getSummary(), level + 1);
+		end("Goal", level);
+	}
+
+	/**
+	 * write a plan
+	 * @param pl The target plan
+	 * @param level The nesting level of the plan
+	 */
+	private void writePlan(PlanNode pl, int level) throws IOException
+	{
+		startPlan(pl, level);
+		ArrayList<Node> body = pl.getPlanBody();
+		if (!startChildren(body.size() + (pl.getSummary() == null ? 0 : 1))) {
+			return;
+		}
+		// write all actions and subgoals it contains
+		for (Node step : body) {
+			if (step instanceof ActionNode) {
+				writeAction((ActionNode) step, level + 1);
+			}
+			if (step instanceof GoalNode) {
+				writeGoal((GoalNode) step, level + 1);
+			}
+		}
+		writeSummary(pl.getSummary(), level + 1);
+		end("Plan", level);
+	}
+
+	/**
+	 * write the start tag of a goal, up to its attributes
+	 * @param gl The target goal
+	 * @param level The nesting level of the goal
+	 */
+	private void startGoal(GoalNode gl, int level) throws IOException
+	{
+		indent(level);
+		ascii("<Goal name=\"");
+		name(gl);
+		ascii("\"");
+		// goal-condition
+		writeCondition("goal-condition", gl.getGoalConds());
+	}
+
+	/**
+	 * write the start tag of a plan, up to its attributes
+	 * @param pl The target plan
+	 * @param level The nesting level of the plan
+	 */
+	private void startPlan(PlanNode pl, int level) throws IOException
+	{
+		indent(level);
+		ascii("<Plan name=\"");
+		name(pl);
+		ascii("\"");
+		// precondition
+		writeCondition("precondition", pl.getPre());
+	}
+
+	/**
+	 * write action
+	 * @param act The target action
+	 * @param level The nesting level of the action
+	 */
+	private void writeAction(ActionNode act, int level) throws IOException
+	{
+		indent(level);
+		ascii("<Action name=\"");
+		name(act);
+		ascii("\"");
+		writeCondition("precondition", act.getPreC());
+		writeCondition("postcondition", act.getPostC());
+		ascii(" />");
+		put(EOL);
+	}
+
+	/**
+	 * write the summary information of a goal or a plan, as its last child
+	 * @param summary The summary information, nothing is written if it is null
+	 * @param level The nesting level of the summary
+	 */
+	private void writeSummary(Summary summary, int level) throws IOException
+	{
+		if (summary == null) {
+			return;
+		}
+		indent(level);
+		ascii("<Summary");
+		writeCondition("must-precondition", summary.getMustPre());
+		writeCondition("may-precondition", summary.getMayPre());
+		writeCondition("must-effect", summary.getMustEffect());
+		writeCondition("may-effect", summary.getMayEffect());
+		ascii(" />");
+		put(EOL);
+	}
+
+	/**
+	 * write a condition attribute, nothing is written for an empty condition
+	 * @param attribute The name of the attribute
+	 * @param st The literals of the condition
+	 */
+	private void writeCondition(String attribute, List<Literal> st) throws IOException
+	{
+		if (st == null || st.isEmpty()) {
+			return;
+		}
+		put((byte) ' ');
+		ascii(attribute);
+		ascii("=\"");
+		for (int i = 0; i < st.size(); i++)
+		{
+			if (i > 0) {
+				ascii(", ");
+			}
+			put((byte) '(');
+			escaped(st.get(i).getId());
+			put((byte) ',');
+			ascii(st.get(i).getState() ? "true" : "false");
+			put((byte) ')');
+		}
+		ascii(";\"");
+	}
+
+	/**
+	 * close the start tag of an element
+	 * @param children The number of children of the element
+	 * @return false if the element is empty and has been closed already
+	 */
+	private boolean startChildren(int children) throws IOException
+	{
+		if (children == 0) {
+			ascii(" />");
+			put(EOL);
+			return false;
+		}
+		put((byte) '>');
+		put(EOL);
+		return true;
+	}
+
+	/**
+	 * write an end tag
+	 * @param element The name of the element
+	 * @param level The nesting level of the element
+	 */
+	private void end(String element, int level) throws IOException
+	{
+		indent(level);
+		ascii("</");
+		ascii(element);
+		put((byte) '>');
+		put(EOL);
+	}
+
+	/**
+	 * give up the forest: on close, neither the rest of the buffer nor the end of the forest element is written, so
+	 * the output is not well-formed
+	 */
+	@Override
+	public void abort()
+	{
+		aborted = true;
+	}
+
+	/**
+	 * close the forest, flush the buffer and close the channel
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		if (aborted) {
+			channel.close();
+			return;
+		}
+		try {
+			if (open) {
+				ascii("</Forest>");
+				put(EOL);
+				open = false;
+			}
+			flush();
+		}
+		finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * write the content of the buffer to the channel
+	 */
+	void flush() throws IOException
+	{
+		if (channel == null) {
+			// a goal encoded apart from the file is kept whole, the buffer grows instead
+			buffer = ByteBuffer.allocate(buffer.capacity() * 2).put(buffer.flip());
+			return;
+		}
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	private void indent(int level) throws IOException
+	{
+		for (int i = 0; i < level; i++) {
+			put(INDENT);
+		}
+	}
+
+	private void put(byte b) throws IOException
+	{
+		if (!buffer.hasRemaining()) {
+			flush();
+		}
+		buffer.put(b);
+	}
+
+	private void put(byte[] bytes) throws IOException
+	{
+		if (buffer.remaining() < bytes.length) {
+			flush();
+		}
+		buffer.put(bytes);
+	}
+
+	/**
+	 * write the name of a node, rendered straight into the buffer if the node has an identity
+	 */
+	private void name(Node node) throws IOException
+	{
+		long id = node.getId();
+		if (id == NodeId.NONE) {
+			escaped(node.getName());
+			return;
+		}
+		int length = NodeId.render(id, name, 0);
+		if (buffer.remaining() < length) {
+			flush();
+		}
+		buffer.put(name, 0, length);
+	}
+
+	/**
+	 * write a string known to contain only ASCII characters that need no escaping
+	 */
+	private void ascii(String s) throws IOException
+	{
+		for (int i = 0; i < s.length(); i++) {
+			put((byte) s.charAt(i));
+		}
+	}
+
+	/**
+	 * write an attribute value as UTF-8, escaped the same way as JDOM does for a UTF-8 document
+	 */
+	private void escaped(String s) throws IOException
+	{
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			switch (c) {
+				case '<': ascii("&lt;"); break;
+				case '>': ascii("&gt;"); break;
+				case '"': ascii("&quot;"); break;
+				case '&': ascii("&amp;"); break;
+				case '\r': ascii("&#xD;"); break;
+				case '\t': ascii("&#x9;"); break;
+				case '\n': ascii("&#xA;"); break;
+				default:
+					if (c < 0x80) {
+						put((byte) c);
+					}
+					else if (c < 0x800) {
+						put((byte) (0xC0 | (c >> 6)));
+						put((byte) (0x80 | (c & 0x3F)));
+					}
+					else if (Character.isHighSurrogate(c) && i + 1 < s.length()
+							&& Character.isLowSurrogate(s.charAt(i + 1))) {
+						// JDOM writes characters outside the BMP as character references
+						ascii("&#x" + Integer.toHexString(Character.toCodePoint(c, s.charAt(++i))) + ";");
+					}
+					else {
+						put((byte) (0xE0 | (c >> 12)));
+						put((byte) (0x80 | ((c >> 6) & 0x3F)));
+						put((byte) (0x80 | (c & 0x3F)));
+					}
+			}
+		}
+	}
+
+	/**
+	 * Writes the nodes handed over by a generator. The start tag of a goal or a plan is left open until its first
+	 * child or its end, which tells whether the element is empty.
+	 */
+	private class Sink implements TreeSink
+	{
+		/** nesting level of the innermost open element */
+		private int level;
+
+		/** whether the start tag of the innermost open element is still open */
+		private boolean pending;
+
+		@Override
+		public void startGoal(GoalNode goal) throws IOException
+		{
+			if (level == 0 && !open) {
+				throw new IllegalStateException("The environment must be written before any goal");
+			}
+			child();
+			StreamingXMLWriter.this.startGoal(goal, ++level);
+			pending = true;
+		}
+
+		@Override
+		public void startPlan(PlanNode plan) throws IOException
+		{
+			child();
+			StreamingXMLWriter.this.startPlan(plan, ++level);
+			pending = true;
+		}
+
+		@Override
+		public void action(ActionNode action) throws IOException
+		{
+			child();
+			writeAction(action, level + 1);
+		}
+
+		@Override
+		public void endPlan(PlanNode plan) throws IOException
+		{
+			summary(plan);
+			close("Plan");
+		}
+
+		@Override
+		public void endGoal(GoalNode goal) throws IOException
+		{
+			summary(goal);
+			close("Goal");
+		}
+
+		/** write the summary information of the innermost open element, if it has been computed */
+		private void summary(Node node) throws IOException
+		{
+			if (node.getSummary() != null) {
+				child();
+				writeSummary(node.getSummary(), level + 1);
+			}
+		}
+
+		/** close the start tag of the innermost open element before writing a child */
+		private void child() throws IOException
+		{
+			if (pending) {
+				startChildren(1);
+				pending = false;
+			}
+		}
+
+		/** write the end of the innermost open element */
+		private void close(String element) throws IOException
+		{
+			if (pending) {
+				startChildren(0);
+				pending = false;
+			}
+			else {
+				end(element, level);
+			}
+			level--;
+		}
+	}
+}
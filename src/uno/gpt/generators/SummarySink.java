@@ -0,0 +1,94 @@
+/*
+ * Copyright 2021 Yuan Yao
+ * University of Nottingham
+ * Zhejiang University of Technology
+ * Email: yaoyuan@zjut.edu.cn (yuanyao1990yy@icloud.com)
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details
+ *  <http://www.gnu.org/licenses/gpl-3.0.html>.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uno.gpt.generators;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+
+import uno.gpt.structure.*;
+
+/**
+ * @version 1.0
+ *
+ * A sink computing the summary information of each goal and plan as the nodes go through it: the summary of a node
+ * is folded from those of its children and set on the node just before its end is handed over to another sink
+ */
+class SummarySink implements TreeSink
+{
+	final private TreeSink sink;
+
+	/** the environment the literals of the trees come from */
+	final private LiteralTable environment;
+
+	/** the summary information being folded, one per open goal or plan */
+	final private ArrayDeque<Summary.Accumulator> open = new ArrayDeque<>();
+
+	SummarySink(TreeSink sink, LiteralTable environment)
+	{
+		this.sink = sink;
+		this.environment = environment;
+	}
+
+	@Override
+	public void startGoal(GoalNode goal) throws IOException
+	{
+		open.push(new Summary.Accumulator(goal, environment));
+		sink.startGoal(goal);
+	}
+
+	@Override
+	public void startPlan(PlanNode plan) throws IOException
+	{
+		open.push(new Summary.Accumulator(plan, environment));
+		sink.startPlan(plan);
+	}
+
+	@Override
+	public void action(ActionNode action) throws IOException
+	{
+		open.peek().add(action);
+		sink.action(action);
+	}
+
+	@Override
+	public void endPlan(PlanNode plan) throws IOException
+	{
+		end(plan);
+		sink.endPlan(plan);
+	}
+
+	@Override
+	public void endGoal(GoalNode goal) throws IOException
+	{
+		end(goal);
+		sink.endGoal(goal);
+	}
+
+	private void end(Node node)
+	{
+		Summary summary = open.pop().summary();
+		node.setSummary(summary);
+		if (!open.isEmpty()) {
+			open.peek().add(summary);
+		}
+	}
+}
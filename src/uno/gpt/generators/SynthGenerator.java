@@ -27,7 +27,12 @@ import uno.gpt.structure.*;
 import javax.swing.*;
 import javax.swing.tree.TreeNode;
 import java.awt.image.AreaAveragingScaleFilter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 /**
  * @version 2.0
@@ -46,17 +51,12 @@ public class SynthGenerator extends AbstractGenerator {
 
 	static final double def_prob_leaf = 0d;
 
-	/** id of the tree */
-	private int id;
+	/** version of the generated forests, to be increased whenever the same parameters give a different forest, so
+	 * that the forests cached by former versions are not used any more */
+	static final int forest_version = 2;
 
-	/** total number of goals in this goal plan tree */
-	private int treeGoalCount;
-
-	/** total number of plans in this goal plan tree */
-	private int treePlanCount;
-
-	/** total number of actions in this goal plan tree */
-	private int treeActionCount;
+	/** random seed */
+	final private int seed;
 
 	/** random generators */
 	final private Random rm;
@@ -85,15 +85,19 @@ public class SynthGenerator extends AbstractGenerator {
 	/** probabilty of a plan being leaf plan */
 	final private double prob;
 
-	/** the set of variables selected*/
-	private ArrayList<Integer> selected_indexes;
+	/** whether random samples reproduce the draw sequence of the former rejection loops */
+	final private boolean legacy_sampling;
+
+	/** index of the first environment variable, EV-0, in the environment */
+	private int first_var;
 
-	/** the set of irrelevant literals*/
-	private ArrayList<Literal> is;
+	/** the metrics of the generation, null if they are not collected */
+	private GenerationMetrics metrics;
 
 	/** Constructor add a new variable num_sel */
-	SynthGenerator(int seed, int tree_depth, int num_tree, int num_goal, int num_plan, int num_action, int num_var,
-				   int num_sel, double prob) {
+	public SynthGenerator(int seed, int tree_depth, int num_tree, int num_goal, int num_plan, int num_action, int num_var,
+				   int num_sel, double prob, boolean legacy_sampling) {
+		this.seed = seed;
 		this.rm = new Random(seed);
 		this.tree_depth = tree_depth;
 		this.num_tree = num_tree;
@@ -103,449 +107,623 @@ public class SynthGenerator extends AbstractGenerator {
 		this.num_var = num_var;
 		this.num_sel = num_sel;
 		this.prob = prob;
+		this.legacy_sampling = legacy_sampling;
 	}
 
 	/**
 	 * Generate environment
 	 * @return the generated environment*/
-	public HashMap<String, Literal> genEnvironment(){
-		environment = new HashMap<>();
-		Literal workingLit;
+	public LiteralTable genEnvironment(){
+		GenerationEvents.Environment event = new GenerationEvents.Environment();
+		event.begin();
+		long start = System.nanoTime();
+		environment = new LiteralTable();
 
 		// generate goal literals, all of which are false initially
-		for (int i = 0; i < num_tree; i++) {
-			workingLit = new Literal("G-" + i, false);
-			environment.put(workingLit.getId(), workingLit);
-		}
+		environment.addRange("G-", 0, num_tree, k -> false);
 		// generate all the  environment literals with their initial value
+		first_var = environment.addRange("EV-", 0, num_var, k -> rm.nextBoolean());
+		event.end();
+		if (event.shouldCommit()) {
+			event.variables = environment.size();
+			event.commit();
+		}
+		if (metrics != null) {
+			metrics.environment(environment.size(), System.nanoTime() - start);
+		}
+		return environment;
+	}
+
+	/**
+	 * Continue the environment of a forest generated with the same parameters, so that its next trees can be
+	 * generated with {@link #genIndependentGoal(int)}: the goal literals of the trees from the number of trees of the
+	 * forest up to the number of trees of this generator are added after the variables of the environment, whose
+	 * indexes are left unchanged.
+	 * @param existing The environment of the forest, extended in place
+	 * @param trees The number of trees of the forest
+	 * @return the environment
+	 * @throws IllegalArgumentException if the environment is not the one these parameters give to the forest
+	 */
+	public LiteralTable extendEnvironment(LiteralTable existing, int trees){
+		long start = System.nanoTime();
+		if (trees > num_tree) {
+			throw new IllegalArgumentException("The forest already has " + trees + " trees");
+		}
+		if (existing.size() != trees + num_var) {
+			throw new IllegalArgumentException("The forest has " + existing.size() + " variables, " + (trees + num_var)
+					+ " were expected for " + trees + " trees and " + num_var + " environment variables");
+		}
+		for (int i = 0; i < trees; i++) {
+			int index = existing.indexOf("G-" + i);
+			if (index < 0 || existing.getInitialState(index)) {
+				throw new IllegalArgumentException("The goal literal G-" + i + " of the forest is missing or not false");
+			}
+		}
+		// the environment variables are drawn as in genEnvironment, their values must be the same
+		int first = existing.indexOf("EV-0");
 		for (int i = 0; i < num_var; i++) {
 			boolean v = rm.nextBoolean();
-			workingLit = new Literal("EV-" + i, v);
-			environment.put(workingLit.getId(), workingLit);
+			if (first < 0 || existing.indexOf("EV-" + i) != first + i || existing.getInitialState(first + i) != v) {
+				throw new IllegalArgumentException("The environment variables of the forest were not generated with these parameters");
+			}
+		}
+		environment = existing;
+		first_var = first;
+		environment.addRange("G-", trees, num_tree - trees, k -> false);
+		if (metrics != null) {
+			metrics.environment(environment.size(), System.nanoTime() - start);
 		}
 		return environment;
 	}
 
 	/**
-	 * A function for producing the top level goals for the GPTs
+	 * collect the counters and timings of the environment and of every tree generated from now on
+	 * @param metrics The metrics to fill in, null to stop collecting
+	 */
+	void setMetrics(GenerationMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * A function for producing the top level goals for the GPTs. The trees are drawn one after another from the
+	 * shared random stream, so they must be produced in order.
 	 * @param index The index of the Goal being produced
 	 * @return A Goal Node
 	 */
 	@Override
 	public GoalNode genTopLevelGoal(int index) {
-		// Set the generator id
-		this.id = index;
-		// Set the counters for this tree to 0
-		this.treeGoalCount = 0;
-		this.treePlanCount = 0;
-		this.treeActionCount = 0;
-
-		// randomly select the conditions that can be the post-condition of action in this gpt, i.e. the set es
-		ArrayList<Literal> selected = selectVar(this.num_sel);
-		ArrayList<Literal> actL = new ArrayList<>(selected.subList(0,this.num_sel));
-		for(int i = 0; i < this.num_sel; i++){
-			Literal cu = actL.get(i).clone();
-			cu.setState(!actL.get(i).getState());
-			actL.add(cu);
-		}
-
-		// get the irrelevant literals, i.e. the set vs/es
-		this.is = new ArrayList<>(selected.subList(this.num_sel,selected.size()));
-		// the goal-condition
-		ArrayList<Literal> gcs = new ArrayList<>();
-		// add the goal condition
-		gcs.add(new Literal("G-" + index, true));
-		// create the top-level goal
-		GoalNode tpg = createGoal(0, actL, new ArrayList<>(), gcs);
-		// return top-level goal
-		return tpg;
+		return new TreeBuilder(index, this.rm).build();
 	}
 
-
 	/**
-	 * select m literals that can be used as post-condition of actions in the gpt
-	 * @return a new list where the first m literals are selected, and the others are irrelevant literals
+	 * Produce a top level goal from the shared random stream like {@link #genTopLevelGoal(int)}, handing its nodes
+	 * to a sink as they are created instead of building the tree
+	 * @param index The index of the Goal being produced
+	 * @param sink The sink receiving the nodes
 	 */
-	private ArrayList<Literal> selectVar(int m){
-		// note that m must be less than or equal to num_var
-		// randomly pick m different variables
-		this.selected_indexes = new ArrayList<>();
-		while (selected_indexes.size() < m){
-			int index = rm.nextInt(this.num_var);
-			if(!selected_indexes.contains(index)){
-				selected_indexes.add(index);
-			}
-		}
-		// return the corresponding literal in the current environment
-		ArrayList<Literal> result = new ArrayList<>();
-		// the set of literals that are not selected
-		ArrayList<Literal> irr = new ArrayList<>();
-
-		for(int i = 0; i < this.num_var; i++){
-			// if the index of this literal is selected
-			if(this.selected_indexes.contains(i)){
-				result.add(environment.get("EV-" + i));
-			}
-			// otherwise, this literal is categorised as irrelevant
-			else {
-				irr.add(environment.get("EV-" + i));
-			}
-
-		}
-		result.addAll(irr);
-		return  result;
+	@Override
+	public void genTopLevelGoal(int index, TreeSink sink) throws IOException {
+		new TreeBuilder(index, this.rm).generate(sink);
 	}
 
-
 	/**
-	 * a function to recursively create and construct a goal and all its hierarchies below
-	 * @param depth current depth
-	 * @param as the set of literals could be used as postcondition of actions in this tree
-	 * @param ps the precondition of this goal, i.e. common condition fro all plans to achieve this goal
-	 * @param gcs the goal-condition of this goal
-	 * @return
+	 * Produce a top level goal from its own random stream, derived from the seed and the index of the tree. The
+	 * tree does not depend on which other trees are generated, nor on the order they are generated in.
+	 * @param index The index of the Goal being produced
+	 * @return A Goal Node
 	 */
-	private GoalNode createGoal(int depth, ArrayList<Literal> as, ArrayList<Literal> ps, ArrayList<Literal> gcs){
-
-		// create the goal node
-		GoalNode goalNode = new GoalNode("T" + this.id + "-G" + this.treeGoalCount++);
-		// generate all plans to achieve this goal
-		ArrayList<PlanNode> plans = new ArrayList<>();
-		// clone the irrelevant literals, we assume the number of literals in potential is greater than or equals to
-		// the number of plans need to be generated, these conditions are treated as pure environment variables which
-		// cannot be affected by the GPT itself (i.e., can be changed by the environment itself or other intentions)
-		ArrayList<Literal> potential = (ArrayList<Literal>) is.clone();
-		// create each plan one by one
-		for(int i = 0; i < this.num_plan; i++){
-			// generate its precondition (context condition), the p-effect part
-			ArrayList<Literal> prec = new ArrayList<>(ps);
-			// if there are pure environment conditions remains
-			if(potential.size() > 0){
-				if (prec.size() == 2){
-					prec.remove(1);
-				}
-				// randomly select a pure environmental condition
-				int j = rm.nextInt(potential.size());
-				// add it to the precondtion of this plan
-				prec.add(potential.get(j));
-				// remove it from the set of possible environmental literals
-				potential.remove(j);
-			}
+	@Override
+	public GoalNode genIndependentGoal(int index) {
+		return new TreeBuilder(index, new Random(Seeds.derive(this.seed, index))).build();
+	}
 
-			// create the plan
-			PlanNode plan;
-			// each plan has l% chance to be a leaf plan
-			if(rm.nextDouble() < this.prob){
-				// if it is a leaf plan, its depth is set to the maximum
-				plan = createPlan(this.tree_depth - 1, as, prec, gcs);
-			}else {
-				plan = createPlan(depth, as, prec, gcs);
-			}
-			// add it to the set of plans
-			plans.add(plan);
+	/**
+	 * Produce top level goals in parallel, each from its own random stream (see {@link #genIndependentGoal(int)}).
+	 * The result is the same whatever the number of threads.
+	 * @param from The index of the first Goal
+	 * @param count The number of Goals
+	 * @param threads The number of threads
+	 * @return The Goal Nodes, ordered by index
+	 */
+	@Override
+	public ArrayList<GoalNode> genTopLevelGoals(int from, int count, int threads) {
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			return pool.submit(() -> IntStream.range(from, from + count).parallel()
+					.mapToObj(this::genIndependentGoal)
+					.collect(Collectors.toCollection(ArrayList::new))).join();
+		} finally {
+			pool.shutdown();
 		}
-		// attach all plans to the goal
-		goalNode.getPlans().addAll(plans);
-		// add its goal-condition
-		goalNode.getGoalConds().addAll(gcs);
-		// return the goal node
-		return goalNode;
 	}
 
-
 	/**
-	 * a function to generate plans to achieve a particular goal
-	 * @param depth the depth of this plan
-	 * @param as the set of conditions that can be postcondition of actions
-	 * @param prec the precondition of this context condition
-	 * @param gcs the goal condition this plan is going to achieve
-	 * @return the plan
+	 * The per-tree state of the generator. Each tree is built by its own builder, so trees using different random
+	 * streams can be built concurrently; the environment and the parameters are only read.
 	 */
-	private PlanNode createPlan(int depth, ArrayList<Literal> as, ArrayList<Literal> prec, ArrayList<Literal> gcs){
-		PlanNode planNode = new PlanNode("T" + this.id + "-P" + this.treePlanCount++);
-
-		// initialise the plan body
-		ArrayList<Node> planbody = new ArrayList<>();
-		// the number of steps in a plan
-		int stepnum;
-		// if it is a leaf plan then it only contains actions
-		if(depth == this.tree_depth - 1){
-			stepnum = this.num_action;
-		}
-		// otherwise, it contains both actions and subgoals
-		else{
-			stepnum = this.num_action + this.num_goal;
+	private class TreeBuilder {
+		/** id of the tree */
+		final private int id;
+
+		/** total number of goals in this goal plan tree */
+		private int treeGoalCount;
+
+		/** total number of plans in this goal plan tree */
+		private int treePlanCount;
+
+		/** total number of actions in this goal plan tree */
+		private int treeActionCount;
+
+		/** total number of literals in the conditions of the nodes of this goal plan tree */
+		private long treeLiteralCount;
+
+		/** nanoseconds spent selecting the variables, building plan bodies and computing safe conditions */
+		private long selectionNanos, planBodyNanos, safeConditionNanos;
+
+		/** random generator of this tree */
+		final private Random rm;
+
+		/** sampler drawing from the random generator of this tree */
+		final private Sampler sampler;
+
+		/** the conditions of this tree, shared by the nodes with the same literals */
+		final private LiteralTable.Interner conditions;
+
+		/** the variables selected, in increasing order, the others giving the irrelevant literals */
+		private int[] selected_indexes;
+
+		TreeBuilder(int id, Random rm) {
+			this.id = id;
+			this.rm = rm;
+			this.sampler = new Sampler(rm, legacy_sampling);
+			this.conditions = environment.interner();
 		}
 
-		// initialise the planbody, we assume they are all actions at first
-		ArrayList<ActionNode> steps = new ArrayList<>();
-
-		// create the list of execution steps (actions) based on p-effect rules, and return the resulting post-condition
-		ArrayList<Literal> postc = createPlanBody(stepnum, prec, gcs, as, steps);
-		// assign type for each step, i.e., in fact not all steps are actions
-		ArrayList<Boolean> types = assignPosition(stepnum);
-		// calculate the safe conditions for subgoals
-		ArrayList<Literal> safeC = safeCondition(steps, as);
-
-		// create each action and subgoal
-		for(int i = 0; i < types.size(); i++){
-			// if it is an action
-			if(types.get(i)){
-				// create the action
-				ActionNode actionNode = new ActionNode("T" + this.id + "-A" + this.treeActionCount++, steps.get(i).getPreC(),
-						steps.get(i).getPostC());
-				// and add it to the plan body
-				planbody.add(actionNode);
-			}
-			// if it is a subgoal
-			else{
-			    // remove the goal-condition of a subgoal from the plan's postcondition
-                ArrayList<Literal> pc = steps.get(i).getPostC();
-                for(int m = 0; m < pc.size(); m++){
-                    for(int n = 0; n < postc.size(); n++){
-                        if(postc.get(n).getId().equals(pc.get(m).getId()) &&
-                        postc.get(n).getState() == pc.get(m).getState()){
-                            postc.remove(n);
-                            break;
-                        }
-                    }
-                }
-                // create the subgoal
-				GoalNode subgoal = createGoal(depth+1, safeC, steps.get(i).getPreC(), steps.get(i).getPostC());
-                // add the subgoal to the plan body
-				planbody.add(subgoal);
+		/**
+		 * produce the top level goal of this tree
+		 * @return A Goal Node
+		 */
+		GoalNode build() {
+			TreeAssembler assembler = new TreeAssembler();
+			try {
+				generate(assembler);
+			} catch (IOException e) {
+				// the assembler does no I/O
+				throw new UncheckedIOException(e);
 			}
+			return assembler.getRoot();
 		}
 
-		// add these to its plan body
-		planNode.getPlanBody().addAll(planbody);
-		// add the context condition
-		planNode.getPre().addAll(prec);
-
-		// remove the postcondition
-		for(int m = 0; m < prec.size(); m++){
-			for(int n = 0; n < postc.size(); n++){
-				if(postc.get(n).getId().equals(prec.get(m).getId()) &&
-				postc.get(n).getState() == prec.get(m).getState()){
-					postc.remove(n);
-					break;
+		/**
+		 * produce the top level goal of this tree, handing its nodes to a sink as they are created. The tree is built
+		 * depth-first with an explicit stack of the goals and plans being expanded instead of recursion, drawing the
+		 * random numbers in the same order, so the depth of the tree is only bounded by the heap.
+		 * @param sink The sink receiving the nodes
+		 */
+		void generate(TreeSink sink) throws IOException {
+			GenerationEvents.Tree event = new GenerationEvents.Tree();
+			event.begin();
+			long start = System.nanoTime();
+			// randomly select the conditions that can be the post-condition of action in this gpt, i.e. the set es
+			ArrayList<Literal> selected = selectVar(num_sel);
+			selectionNanos = System.nanoTime() - start;
+			ConditionSet actL = new ConditionSet(environment, selected);
+			for(int i = 0; i < num_sel; i++){
+				actL.add(actL.get(i).negate());
+			}
+
+			// the irrelevant literals, i.e. the set vs/es, are the variables not selected, see Unused
+			// the goal-condition
+			ArrayList<Literal> gcs = new ArrayList<>();
+			// add the goal condition
+			gcs.add(produceLiteral("G-" + this.id, true));
+
+			// the goals and plans being expanded, the innermost on top
+			ArrayDeque<Object> stack = new ArrayDeque<>();
+			// create the top-level goal
+			stack.push(startGoal(0, actL, new ArrayList<>(), gcs, sink));
+			while (!stack.isEmpty()) {
+				Object top = stack.peek();
+				if (top instanceof GoalFrame) {
+					GoalFrame goal = (GoalFrame) top;
+					// create the next plan, or end the goal once all its plans are done
+					if (goal.next < num_plan) {
+						goal.next++;
+						stack.push(nextPlan(goal, sink));
+					} else {
+						stack.pop();
+						sink.endGoal(goal.node);
+					}
+				} else {
+					PlanFrame plan = (PlanFrame) top;
+					// create the next step, or end the plan once all its steps are done
+					if (plan.next < plan.types.size()) {
+						int i = plan.next++;
+						ActionNode step = plan.steps.get(i);
+						// if it is an action
+						if (plan.types.get(i)) {
+							// create the action and hand it over
+							treeLiteralCount += step.getPreC().size() + step.getPostC().size();
+							sink.action(new ActionNode(NodeId.of(this.id, FlatForest.ACTION, this.treeActionCount++), step.getPreC(),
+									step.getPostC()));
+						}
+						// if it is a subgoal
+						else {
+							// remove the goal-condition of a subgoal from the plan's postcondition
+							Condition pc = step.getPostC();
+							for (int m = 0; m < pc.size(); m++) {
+								plan.postc.removeFirst(pc.get(m));
+							}
+							// create the subgoal
+							stack.push(startGoal(plan.depth + 1, plan.safeC, step.getPreC(), step.getPostC(), sink));
+						}
+					} else {
+						// remove the postcondition
+						for (int m = 0; m < plan.prec.size(); m++) {
+							plan.postc.removeFirst(plan.prec.get(m));
+						}
+						stack.pop();
+						sink.endPlan(plan.node);
+					}
 				}
 			}
+			report(event, System.nanoTime() - start);
 		}
-		return planNode;
 
-	}
+		/**
+		 * commit the event of this tree and add its counters to the metrics of the generator
+		 * @param event The event of this tree, begun when the generation started
+		 * @param nanos The time of the generation
+		 */
+		private void report(GenerationEvents.Tree event, long nanos) {
+			event.end();
+			if (event.shouldCommit()) {
+				event.index = id;
+				event.goals = treeGoalCount;
+				event.plans = treePlanCount;
+				event.actions = treeActionCount;
+				event.literals = treeLiteralCount;
+				event.selection = selectionNanos;
+				event.planBody = planBodyNanos;
+				event.safeCondition = safeConditionNanos;
+				event.commit();
+			}
+			if (metrics != null) {
+				GenerationMetrics.Tree tree = metrics.tree(id);
+				tree.goals = treeGoalCount;
+				tree.plans = treePlanCount;
+				tree.actions = treeActionCount;
+				tree.literals = treeLiteralCount;
+				tree.nanos += nanos;
+				tree.selectionNanos = selectionNanos;
+				tree.planBodyNanos = planBodyNanos;
+				tree.safeConditionNanos = safeConditionNanos;
+			}
+		}
 
 
-	/**
-	 * a function to create a list execution steps in a plan body (we assume all these steps are actions)
-	 * @param stepNum the number of steps
-	 * @param prec the context condition of the plan
-	 * @param gcs the goal condition this plan is going to achieve
-	 * @param as the set of conditions that can be the postcondition of the actions
-	 * @param steps the initially empty plan body
-	 * @return
-	 */
-	private ArrayList<Literal> createPlanBody(int stepNum, ArrayList<Literal> prec, ArrayList<Literal> gcs, ArrayList<Literal> as, ArrayList<ActionNode> steps){
-		// current states, copied from the precondition of the plan
-		ArrayList<Literal> current = new ArrayList<>();
-		for(int i = 0; i < prec.size(); i++){
-			current.add(prec.get(i));
+		/**
+		 * select m literals that can be used as post-condition of actions in the gpt, the other variables giving the
+		 * irrelevant literals
+		 * @return a new list of the m literals selected, in the order of their variables
+		 */
+		private ArrayList<Literal> selectVar(int m){
+			// note that m must be less than or equal to num_var
+			// randomly pick m different variables
+			this.selected_indexes = sampler.subset(num_var, m);
+			// return the corresponding literal in the current environment
+			ArrayList<Literal> result = new ArrayList<>(m);
+			for (int i : this.selected_indexes) {
+				result.add(environment.getInitial(first_var + i));
+			}
+			return result;
 		}
-		// possible action literals copied from as, we also ensure that there is no action make the current state true
-		ArrayList<Literal> actionLiteral = new ArrayList<>(as);
-		// construct each step
-		for(int i = 0; i < stepNum; i++){
-			// the precondition of the action
-			ArrayList<Literal> precondition = new ArrayList<>();
-			// the precondition of the first step is the same as the precondition of this plan
-			if(i == 0){
-				precondition = prec;
+
+		/**
+		 * The irrelevant literals not used by the plans of a goal yet: the variables which are not selected, in the
+		 * order of their indexes, less the ones already used. They are found by their rank instead of being listed,
+		 * so a goal costs the same whatever the number of variables.
+		 */
+		private class Unused {
+			/** the ranks among all the irrelevant literals of the ones used, in increasing order */
+			private int[] used = new int[4];
+
+			/** number of literals used */
+			private int usedCount;
+
+			/** @return the number of literals left */
+			int size() {
+				return num_var - selected_indexes.length - usedCount;
 			}
-			// if it is not then randomly select a literal from the current state.
-			else {
-				// select a literal
-				int sx = rm.nextInt(current.size());
-				// ignore the precondition that already appears
-				while(precondition.contains(current.get(sx))){
-					sx = rm.nextInt(current.size());
+
+			/**
+			 * @param j the position of a literal among the literals left
+			 * @return the literal, which is removed
+			 */
+			Literal remove(int j) {
+				// its rank among all the irrelevant literals, skipping the ones used
+				int rank = j, at = 0;
+				while (at < usedCount && used[at] <= rank) {
+					rank++;
+					at++;
+				}
+				if (usedCount == used.length) {
+					used = Arrays.copyOf(used, usedCount * 2);
 				}
-				// add it to the set of preconditions
-				precondition.add(current.get(sx));
+				System.arraycopy(used, at, used, at + 1, usedCount - at);
+				used[at] = rank;
+				usedCount++;
+				// its variable: rank plus the number of selected variables before it, i.e. of the selected
+				// variables with at most rank unselected variables before them
+				int low = 0, high = selected_indexes.length;
+				while (low < high) {
+					int mid = (low + high) >>> 1;
+					if (selected_indexes[mid] - mid <= rank) {
+						low = mid + 1;
+					} else {
+						high = mid;
+					}
+				}
+				return environment.getInitial(first_var + rank + low);
 			}
+		}
 
-			// the postcondition of the action
-			ArrayList<Literal> postcondition = new ArrayList<>();
-			// if this step is the last action, then it has the goal-condition as its postcondition
-			if(i == stepNum - 1){
-				postcondition = gcs;
-			}
-			// otherwise, the postcondition is randomly generated apart from the last action
-			else{
-				// randomly select a postcondition
-				int index = rm.nextInt(actionLiteral.size());
-				Literal p = actionLiteral.get(index);
-				postcondition.add(p);
-				// update the current state
-				updateCurrentLiterals(current, p);
-				// update the set of action
-				updateActionLiterals(actionLiteral, p);
+
+		/**
+		 * A goal being expanded: its plans are created one at a time
+		 */
+		private class GoalFrame {
+			/** the goal node */
+			final GoalNode node;
+			/** current depth */
+			final int depth;
+			/** the set of literals could be used as postcondition of actions in this tree */
+			final ConditionSet as;
+			/** the precondition of this goal, i.e. common condition fro all plans to achieve this goal */
+			final List<Literal> ps;
+			/** the goal-condition of this goal */
+			final List<Literal> gcs;
+			/** the pure environment conditions not used by a plan of this goal yet */
+			final Unused potential;
+			/** the number of plans created */
+			int next;
+
+			GoalFrame(GoalNode node, int depth, ConditionSet as, List<Literal> ps, List<Literal> gcs,
+					  Unused potential) {
+				this.node = node;
+				this.depth = depth;
+				this.as = as;
+				this.ps = ps;
+				this.gcs = gcs;
+				this.potential = potential;
 			}
-			// create the corresponding action
-			ActionNode action = new ActionNode("", precondition, postcondition);
-			steps.add(action);
 		}
 
-		// add the goal-condition
-		for(int i = 0; i < gcs.size(); i++){
-			current.add(gcs.get(i));
+		/**
+		 * A plan being expanded: its steps are created one at a time
+		 */
+		private class PlanFrame {
+			/** the plan node */
+			final PlanNode node;
+			/** the depth of this plan */
+			final int depth;
+			/** the precondition of this plan */
+			final ArrayList<Literal> prec;
+			/** the execution steps, all as actions */
+			final ArrayList<ActionNode> steps;
+			/** the type of each step, true for an action */
+			final ArrayList<Boolean> types;
+			/** the postcondition of the plan */
+			final ConditionSet postc;
+			/** the safe conditions for subgoals */
+			final ConditionSet safeC;
+			/** the number of steps created */
+			int next;
+
+			PlanFrame(PlanNode node, int depth, ArrayList<Literal> prec, ArrayList<ActionNode> steps,
+					  ArrayList<Boolean> types, ConditionSet postc, ConditionSet safeC) {
+				this.node = node;
+				this.depth = depth;
+				this.prec = prec;
+				this.steps = steps;
+				this.types = types;
+				this.postc = postc;
+				this.safeC = safeC;
+			}
 		}
-		return current;
-	}
 
-	/**
-	 * checks whether a literal l is in ls
-	 * @param ls
-	 * @param l
-	 * @return
-	 */
-	private boolean contains(ArrayList<Literal> ls, Literal l){
-		for(int i = 0; i < ls.size(); i++){
-			if(ls.get(i).getId().equals(l.getId()) && ls.get(i).getState() == l.getState())
-				return true;
+		/**
+		 * a function to create a goal, whose plans are then created by {@link #nextPlan(GoalFrame, TreeSink)}
+		 * @param depth current depth
+		 * @param as the set of literals could be used as postcondition of actions in this tree
+		 * @param ps the precondition of this goal, i.e. common condition fro all plans to achieve this goal
+		 * @param gcs the goal-condition of this goal
+		 * @param sink the sink receiving the goal
+		 * @return the goal being expanded
+		 */
+		private GoalFrame startGoal(int depth, ConditionSet as, List<Literal> ps, List<Literal> gcs,
+									TreeSink sink) throws IOException {
+			// create the goal node
+			GoalNode goalNode = new GoalNode(NodeId.of(this.id, FlatForest.GOAL, this.treeGoalCount++), conditions.condition(gcs));
+			treeLiteralCount += gcs.size();
+			sink.startGoal(goalNode);
+			// all the irrelevant literals, we assume the number of literals in potential is greater than or equals to
+			// the number of plans need to be generated, these conditions are treated as pure environment variables which
+			// cannot be affected by the GPT itself (i.e., can be changed by the environment itself or other intentions)
+			Unused potential = new Unused();
+			return new GoalFrame(goalNode, depth, as, ps, gcs, potential);
 		}
-		return false;
-	}
 
-	/**
-	 * update the current state based on a literal l. If a literal l(its negation) is in ls, then remove it.
-	 * Add l in the tail of this list
-	 * @param ls
-	 * @param l
-	 */
-	private void updateCurrentLiterals(ArrayList<Literal> ls, Literal l){
-		for(int i = 0; i < ls.size(); i++){
-			if(ls.get(i).getId().equals(l.getId())){
-				ls.remove(i);
-				break;
+		/**
+		 * a function to create the next plan to achieve a goal
+		 * @param goal the goal being expanded
+		 * @param sink the sink receiving the plan
+		 * @return the plan being expanded
+		 */
+		private PlanFrame nextPlan(GoalFrame goal, TreeSink sink) throws IOException {
+			// generate its precondition (context condition), the p-effect part
+			ArrayList<Literal> prec = new ArrayList<>(goal.ps);
+			// if there are pure environment conditions remains
+			if(goal.potential.size() > 0){
+				if (prec.size() == 2){
+					prec.remove(1);
+				}
+				// randomly select a pure environmental condition
+				int j = rm.nextInt(goal.potential.size());
+				// add it to the precondtion of this plan, and remove it from the set of possible environmental literals
+				prec.add(goal.potential.remove(j));
 			}
-		}
-		ls.add(l);
-	}
 
-	/**
-	 * update the list of action literals. If a literal l is achieved, then remove l from ls and add its negation to ls
-	 * @param ls
-	 * @param l
-	 */
-	private void updateActionLiterals(ArrayList<Literal> ls, Literal l){
-		int index = -1;
-		for(int i = 0; i < ls.size(); i++){
-			if(ls.get(i).getId().equals(l.getId())){
-				// if they are exactly the same
-				if(ls.get(i).getState() == l.getState()){
-					// if its negation has not been found yet
-					if(index == -1){
-						index = i;
-					}
-					ls.remove(i);
-					break;
-				}
-				// if its negation was found
-				else{
-					index = - 2;
-				}
+			// each plan has l% chance to be a leaf plan
+			if(rm.nextDouble() < prob){
+				// if it is a leaf plan, its depth is set to the maximum
+				return startPlan(tree_depth - 1, goal.as, prec, goal.gcs, sink);
+			}else {
+				return startPlan(goal.depth, goal.as, prec, goal.gcs, sink);
 			}
 		}
 
-		if(index != -2){
-			for(int i = index; i < ls.size(); i++){
-				if(ls.get(i).getState() == l.getState()){
-					index = -2;
-					break;
-				}
+
+		/**
+		 * a function to generate a plan to achieve a particular goal, whose steps are then created by the main loop
+		 * of {@link #generate(TreeSink)}
+		 * @param depth the depth of this plan
+		 * @param as the set of conditions that can be postcondition of actions
+		 * @param prec the precondition of this context condition
+		 * @param gcs the goal condition this plan is going to achieve
+		 * @param sink the sink receiving the plan
+		 * @return the plan being expanded
+		 */
+		private PlanFrame startPlan(int depth, ConditionSet as, ArrayList<Literal> prec, List<Literal> gcs,
+									TreeSink sink) throws IOException {
+			PlanNode planNode = new PlanNode(NodeId.of(this.id, FlatForest.PLAN, this.treePlanCount++), conditions.condition(prec));
+			treeLiteralCount += prec.size();
+			sink.startPlan(planNode);
+
+			// the number of steps in a plan
+			int stepnum;
+			// if it is a leaf plan then it only contains actions
+			if(depth == tree_depth - 1){
+				stepnum = num_action;
+			}
+			// otherwise, it contains both actions and subgoals
+			else{
+				stepnum = num_action + num_goal;
 			}
-		}
 
-		if(index != -2) {
-			ls.add(new Literal(l.getId(), !l.getState()));
+			// initialise the planbody, we assume they are all actions at first
+			ArrayList<ActionNode> steps = new ArrayList<>();
+
+			long start = System.nanoTime();
+			// create the list of execution steps (actions) based on p-effect rules, and return the resulting post-condition
+			ConditionSet postc = createPlanBody(stepnum, prec, gcs, as, steps);
+			// assign type for each step, i.e., in fact not all steps are actions
+			ArrayList<Boolean> types = assignPosition(stepnum);
+			long built = System.nanoTime();
+			planBodyNanos += built - start;
+			// calculate the safe conditions for subgoals
+			ConditionSet safeC = safeCondition(steps, as);
+			safeConditionNanos += System.nanoTime() - built;
+			return new PlanFrame(planNode, depth, prec, steps, types, postc, safeC);
 		}
-	}
 
 
-	/**
-	 * assign the types for each execution steps
-	 * @param stepNum
-	 * @return a list of boolean indicating the type of each step
-	 */
-	private ArrayList<Boolean> assignPosition(int stepNum){
-		// a list of booleans
-		ArrayList<Boolean> positions = new ArrayList<>();
-		for(int i = 0; i < stepNum; i++){
-			positions.add(true);
-		}
-		if(stepNum != this.num_action){
-			ArrayList<Integer> goal_pos = new ArrayList<>();
-			while (goal_pos.size() < this.num_goal){
-				int index = rm.nextInt(stepNum-2);
-				if(!goal_pos.contains(index+1)){
-					goal_pos.add(index+1);
-					positions.set(index+1,false);
+		/**
+		 * a function to create a list execution steps in a plan body (we assume all these steps are actions)
+		 * @param stepNum the number of steps
+		 * @param prec the context condition of the plan
+		 * @param gcs the goal condition this plan is going to achieve
+		 * @param as the set of conditions that can be the postcondition of the actions
+		 * @param steps the initially empty plan body
+		 * @return
+		 */
+		private ConditionSet createPlanBody(int stepNum, ArrayList<Literal> prec, List<Literal> gcs, ConditionSet as, ArrayList<ActionNode> steps){
+			// current states, copied from the precondition of the plan
+			ConditionSet current = new ConditionSet(environment, prec);
+			// possible action literals copied from as, we also ensure that there is no action make the current state true
+			ConditionSet actionLiteral = new ConditionSet(as);
+			// construct each step
+			for(int i = 0; i < stepNum; i++){
+				// the precondition of the action
+				ArrayList<Literal> precondition = new ArrayList<>();
+				// the precondition of the first step is the same as the precondition of this plan
+				if(i == 0){
+					precondition = prec;
+				}
+				// if it is not then randomly select a literal from the current state.
+				else {
+					// select a literal: the precondition is empty, so no literal of the current state can appear in
+					// it already and a single draw is enough
+					int sx = rm.nextInt(current.size());
+					// add it to the set of preconditions
+					precondition.add(current.get(sx));
+				}
+
+				// the postcondition of the action
+				List<Literal> postcondition = new ArrayList<>();
+				// if this step is the last action, then it has the goal-condition as its postcondition
+				if(i == stepNum - 1){
+					postcondition = gcs;
 				}
+				// otherwise, the postcondition is randomly generated apart from the last action
+				else{
+					// randomly select a postcondition
+					int index = rm.nextInt(actionLiteral.size());
+					Literal p = actionLiteral.get(index);
+					postcondition.add(p);
+					// update the current state
+					current.update(p);
+					// update the set of action
+					actionLiteral.achieve(p);
+				}
+				// create the corresponding action
+				ActionNode action = new ActionNode("", conditions.condition(precondition),
+						conditions.condition(postcondition));
+				steps.add(action);
 			}
-		}
-		return positions;
-	}
 
-	/**
-	 * @param steps
-	 * @param conds
-	 * @return a list of safe literals which won't cause any conflicts
-	 */
-	private ArrayList<Literal> safeCondition(ArrayList<ActionNode> steps, ArrayList<Literal> conds){
-		// clone the current action literals
-		ArrayList<Literal> actionLiteral = (ArrayList<Literal>) conds.clone();
-
-		// remove all conflicting conditions
-		removeConflicting(actionLiteral, steps.get(0).getPreC());
-		for(int i = 0; i < steps.size(); i++){
-			removeConflicting(actionLiteral, steps.get(i).getPostC());
+			// add the goal-condition
+			for(int i = 0; i < gcs.size(); i++){
+				current.add(gcs.get(i));
+			}
+			return current;
 		}
-		return actionLiteral;
-	}
 
-	/**
-	 * remove all the conflicting literals
-	 * @param ls
-	 * @param l
-	 */
-	private void removeConflicting(ArrayList<Literal> ls, ArrayList<Literal> l){
-		int index = ls.size();
-		for(int j = 0; j < l.size(); j++){
-			for(int i = 0; i < ls.size(); i++){
-				if(ls.get(i).getId().equals(l.get(j).getId())) {
-					ls.remove(i);
-					index = i;
-				}
+		/**
+		 * assign the types for each execution steps
+		 * @param stepNum
+		 * @return a list of boolean indicating the type of each step
+		 */
+		private ArrayList<Boolean> assignPosition(int stepNum){
+			// a list of booleans
+			ArrayList<Boolean> positions = new ArrayList<>();
+			for(int i = 0; i < stepNum; i++){
+				positions.add(true);
 			}
-			for(int i = index; i < ls.size(); i++){
-				if(ls.get(i).getId().equals(l.get(j).getId())) {
-					ls.remove(i);
-					break;
+			if(stepNum != num_action){
+				// the first and the last steps are always actions
+				for(int index : sampler.distinct(stepNum-2, num_goal)){
+					positions.set(index+1,false);
 				}
 			}
+			return positions;
 		}
 
-	}
-
-
-	/** Get the environmental or non-goal variables as ids */
-	private List<String> getEnvLitsAsStrings(){
-		// Make a new List from the literals of the environment
-		List<String> envLits = new ArrayList<>(environment.keySet());
-		// Filter out the goal Literals
-		envLits.removeIf(l -> (l.startsWith("G-")));
-		// Return this sublist
-		return envLits;
+		/**
+		 * @param steps
+		 * @param conds
+		 * @return a list of safe literals which won't cause any conflicts
+		 */
+		private ConditionSet safeCondition(ArrayList<ActionNode> steps, ConditionSet conds){
+			// clone the current action literals
+			ConditionSet actionLiteral = new ConditionSet(conds);
+
+			// remove all conflicting conditions
+			actionLiteral.removeConflicting(steps.get(0).getPreC());
+			for(int i = 0; i < steps.size(); i++){
+				actionLiteral.removeConflicting(steps.get(i).getPostC());
+			}
+			return actionLiteral;
+		}
 	}
 }
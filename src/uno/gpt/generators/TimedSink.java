@@ -0,0 +1,96 @@
+/*
+ * Copyright 2021 Yuan Yao
+ * University of Nottingham
+ * Zhejiang University of Technology
+ * Email: yaoyuan@zjut.edu.cn (yuanyao1990yy@icloud.com)
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details
+ *  <http://www.gnu.org/licenses/gpl-3.0.html>.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uno.gpt.generators;
+
+import java.io.IOException;
+
+import uno.gpt.structure.ActionNode;
+import uno.gpt.structure.GoalNode;
+import uno.gpt.structure.PlanNode;
+
+/**
+ * @version 1.0
+ *
+ * A sink measuring the time spent in another sink
+ */
+class TimedSink implements TreeSink
+{
+	final private TreeSink sink;
+
+	/** nanoseconds spent in the sink since the last call to {@link #takeNanos()} */
+	private long nanos;
+
+	TimedSink(TreeSink sink)
+	{
+		this.sink = sink;
+	}
+
+	/**
+	 * @return the nanoseconds spent in the sink since the last call, the count is reset
+	 */
+	long takeNanos()
+	{
+		long result = nanos;
+		nanos = 0;
+		return result;
+	}
+
+	@Override
+	public void startGoal(GoalNode goal) throws IOException
+	{
+		long start = System.nanoTime();
+		sink.startGoal(goal);
+		nanos += System.nanoTime() - start;
+	}
+
+	@Override
+	public void startPlan(PlanNode plan) throws IOException
+	{
+		long start = System.nanoTime();
+		sink.startPlan(plan);
+		nanos += System.nanoTime() - start;
+	}
+
+	@Override
+	public void action(ActionNode action) throws IOException
+	{
+		long start = System.nanoTime();
+		sink.action(action);
+		nanos += System.nanoTime() - start;
+	}
+
+	@Override
+	public void endPlan(PlanNode plan) throws IOException
+	{
+		long start = System.nanoTime();
+		sink.endPlan(plan);
+		nanos += System.nanoTime() - start;
+	}
+
+	@Override
+	public void endGoal(GoalNode goal) throws IOException
+	{
+		long start = System.nanoTime();
+		sink.endGoal(goal);
+		nanos += System.nanoTime() - start;
+	}
+}
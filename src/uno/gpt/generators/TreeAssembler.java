@@ -0,0 +1,83 @@
+/*
+ * Copyright 2021 Yuan Yao
+ * University of Nottingham
+ * Zhejiang University of Technology
+ * Email: yaoyuan@zjut.edu.cn (yuanyao1990yy@icloud.com)
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details
+ *  <http://www.gnu.org/licenses/gpl-3.0.html>.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uno.gpt.generators;
+
+import java.util.ArrayDeque;
+
+import uno.gpt.structure.*;
+
+/**
+ * @version 1.0
+ *
+ * A sink attaching every node it receives to its parent, so that the whole goal-plan tree is in memory at the end.
+ */
+class TreeAssembler implements TreeSink
+{
+	/** the goals and plans started and not ended yet */
+	final private ArrayDeque<Node> open = new ArrayDeque<>();
+
+	/** the last top-level goal assembled */
+	private GoalNode root;
+
+	/** @return the last top-level goal assembled */
+	GoalNode getRoot()
+	{
+		return root;
+	}
+
+	@Override
+	public void startGoal(GoalNode goal)
+	{
+		if (open.isEmpty()) {
+			root = goal;
+		}
+		else {
+			((PlanNode) open.peek()).getPlanBody().add(goal);
+		}
+		open.push(goal);
+	}
+
+	@Override
+	public void startPlan(PlanNode plan)
+	{
+		((GoalNode) open.peek()).getPlans().add(plan);
+		open.push(plan);
+	}
+
+	@Override
+	public void action(ActionNode action)
+	{
+		((PlanNode) open.peek()).getPlanBody().add(action);
+	}
+
+	@Override
+	public void endPlan(PlanNode plan)
+	{
+		open.pop();
+	}
+
+	@Override
+	public void endGoal(GoalNode goal)
+	{
+		open.pop();
+	}
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2021 Yuan Yao
+ * University of Nottingham
+ * Zhejiang University of Technology
+ * Email: yaoyuan@zjut.edu.cn (yuanyao1990yy@icloud.com)
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details
+ *  <http://www.gnu.org/licenses/gpl-3.0.html>.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uno.gpt.generators;
+
+import java.io.IOException;
+
+import uno.gpt.structure.ActionNode;
+import uno.gpt.structure.GoalNode;
+import uno.gpt.structure.PlanNode;
+
+/**
+ * @version 1.0
+ *
+ * Receives a goal-plan tree node by node, in document order, as it is generated. A goal or a plan is handed over
+ * when it is created, with its name and its condition but no children, and again once all the nodes below it have
+ * been handed over. The generator keeps no reference to a node after it has ended, so a sink which does not keep
+ * them either can process trees of any size.
+ */
+public interface TreeSink
+{
+	/**
+	 * a goal is started, its plans follow
+	 * @param goal The goal, with its goal-condition
+	 */
+	void startGoal(GoalNode goal) throws IOException;
+
+	/**
+	 * a plan is started, its steps follow
+	 * @param plan The plan, with its precondition
+	 */
+	void startPlan(PlanNode plan) throws IOException;
+
+	/**
+	 * an action of the current plan
+	 * @param action The action
+	 */
+	void action(ActionNode action) throws IOException;
+
+	/**
+	 * all the steps of a plan have been handed over
+	 * @param plan The plan
+	 */
+	void endPlan(PlanNode plan) throws IOException;
+
+	/**
+	 * all the plans of a goal have been handed over
+	 * @param goal The goal
+	 */
+	void endGoal(GoalNode goal) throws IOException;
+}
@@ -0,0 +1,542 @@
+/*
+ * Copyright 2021 Yuan Yao
+ * University of Nottingham
+ * Zhejiang University of Technology
+ * Email: yaoyuan@zjut.edu.cn (yuanyao1990yy@icloud.com)
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details
+ *  <http://www.gnu.org/licenses/gpl-3.0.html>.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uno.gpt.generators;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import uno.gpt.structure.*;
+
+/**
+ * @version 1.0
+ *
+ * Reads a forest saved as XML back into goal-plan trees, with a StAX parser.
+ *
+ * Opening a reader parses the environment and finds the byte offset of each top-level goal, by a scan of the file
+ * that does not parse attributes. Any tree can then be loaded with one seek and a parse of that tree alone. The
+ * offsets can be saved next to the file ({@link #saveIndex()}) and are then reused by the next reader, as long as the
+ * file has not changed.
+ *
+ * A gzip-compressed forest is read the same way, the offsets being those of the uncompressed data. If it was written
+ * by {@link ParallelGzipChannel}, a tree is loaded by decompressing from the block containing its start only.
+ * Summary elements, if the forest has them, are read into the summary information of their goal or plan.
+ */
+public class XMLForestReader implements Closeable
+{
+	/** magic number and version of index files */
+	private static final int INDEX_MAGIC = 0x49545047, INDEX_VERSION = 1;
+
+	/** the StAX factory, without DTD and external entity support */
+	private static final XMLInputFactory factory = XMLInputFactory.newInstance();
+	static {
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+	}
+
+	/** the file */
+	final private Path path;
+
+	/** the opened file, only used with positional reads so trees can be loaded concurrently */
+	final private FileChannel channel;
+
+	/** the blocks of the file if it is compressed, null otherwise */
+	final private BlockGzipIndex blocks;
+
+	/** the environment */
+	final private LiteralTable environment;
+
+	/** the byte offset of each top-level goal */
+	final private long[] offsets;
+
+	private XMLForestReader(Path path, FileChannel channel) throws IOException
+	{
+		this.path = path;
+		this.channel = channel;
+		this.blocks = BlockGzipIndex.isCompressed(channel) ? BlockGzipIndex.build(channel) : null;
+		this.environment = readEnvironment();
+		long[] index = loadIndex();
+		this.offsets = index != null ? index : scan();
+	}
+
+	/**
+	 * Open a forest file, parse its environment and index its trees
+	 * @param path The file to read
+	 * @return The reader
+	 */
+	public static XMLForestReader open(String path) throws IOException
+	{
+		FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ);
+		try {
+			return new XMLForestReader(Paths.get(path), channel);
+		}
+		catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Read a whole forest in a single pass, handing each top-level goal to a consumer as soon as it is parsed. The
+	 * environment is filled in before the first goal is handed over. The file may be gzip-compressed.
+	 * @param path The file to read
+	 * @param environment The empty table to fill with the environment
+	 * @param trees The consumer of the top-level goals
+	 */
+	public static void read(String path, LiteralTable environment, Consumer<GoalNode> trees) throws IOException
+	{
+		try (InputStream in = BlockGzipIndex.decompressed(
+				new BufferedInputStream(Files.newInputStream(Paths.get(path)), 1 << 16)))
+		{
+			XMLStreamReader r = factory.createXMLStreamReader(in, "UTF-8");
+			try {
+				r.nextTag();
+				r.require(XMLStreamConstants.START_ELEMENT, null, "Forest");
+				while (r.nextTag() == XMLStreamConstants.START_ELEMENT) {
+					if (r.getLocalName().equals("Environment")) {
+						readEnvironment(r, environment);
+					}
+					else if (r.getLocalName().equals("Goal")) {
+						trees.accept(readGoal(r, environment));
+					}
+					else {
+						skip(r);
+					}
+				}
+			}
+			finally {
+				r.close();
+			}
+		}
+		catch (XMLStreamException e) {
+			throw new IOException(e);
+		}
+	}
+
+	/** @return the environment */
+	public LiteralTable getEnvironment()
+	{
+		return environment;
+	}
+
+	/** @return the number of trees */
+	public int getTreeCount()
+	{
+		return offsets.length;
+	}
+
+	/** @return the byte offset of each top-level goal in the file */
+	public long[] getOffsets()
+	{
+		return offsets.clone();
+	}
+
+	/**
+	 * Load a tree, parsing only its own part of the file
+	 * @param index The index of the tree
+	 * @return The top-level goal of the tree
+	 */
+	public GoalNode getTree(int index) throws IOException
+	{
+		try (InputStream in = open(offsets[index]))
+		{
+			XMLStreamReader r = factory.createXMLStreamReader(in, "UTF-8");
+			try {
+				r.nextTag();
+				r.require(XMLStreamConstants.START_ELEMENT, null, "Goal");
+				return readGoal(r, environment);
+			}
+			finally {
+				r.close();
+			}
+		}
+		catch (XMLStreamException e) {
+			throw new IOException("Cannot read tree " + index + " of " + path, e);
+		}
+	}
+
+	/** @return all the trees */
+	public ArrayList<GoalNode> getTrees() throws IOException
+	{
+		ArrayList<GoalNode> trees = new ArrayList<>(offsets.length);
+		for (int i = 0; i < offsets.length; i++) {
+			trees.add(getTree(i));
+		}
+		return trees;
+	}
+
+	/**
+	 * save the offsets of the trees next to the file, in the file's name followed by .idx
+	 */
+	public void saveIndex() throws IOException
+	{
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				Files.newOutputStream(indexPath()))))
+		{
+			out.writeInt(INDEX_MAGIC);
+			out.writeInt(INDEX_VERSION);
+			out.writeLong(Files.size(path));
+			out.writeLong(Files.getLastModifiedTime(path).toMillis());
+			out.writeInt(offsets.length);
+			for (long offset : offsets) {
+				out.writeLong(offset);
+			}
+		}
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		channel.close();
+	}
+
+	/**
+	 * @param offset An offset in the forest, uncompressed
+	 * @return a buffered stream of the forest from this offset
+	 */
+	private InputStream open(long offset) throws IOException
+	{
+		if (blocks != null) {
+			return blocks.open(offset);
+		}
+		return new BufferedInputStream(new ChannelInputStream(channel, offset), 1 << 16);
+	}
+
+	private Path indexPath()
+	{
+		return Paths.get(path + ".idx");
+	}
+
+	/**
+	 * @return the offsets saved in the index file, or null if there is none or it is out of date
+	 */
+	private long[] loadIndex() throws IOException
+	{
+		Path index = indexPath();
+		if (!Files.isRegularFile(index)) {
+			return null;
+		}
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(index))))
+		{
+			if (in.readInt() != INDEX_MAGIC || in.readInt() != INDEX_VERSION
+					|| in.readLong() != Files.size(path)
+					|| in.readLong() != Files.getLastModifiedTime(path).toMillis()) {
+				return null;
+			}
+			long[] result = new long[in.readInt()];
+			for (int i = 0; i < result.length; i++) {
+				result[i] = in.readLong();
+			}
+			return result;
+		}
+		catch (EOFException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * parse the environment at the start of the file
+	 */
+	private LiteralTable readEnvironment() throws IOException
+	{
+		LiteralTable result = new LiteralTable();
+		try (InputStream in = open(0))
+		{
+			XMLStreamReader r = factory.createXMLStreamReader(in, "UTF-8");
+			try {
+				r.nextTag();
+				r.require(XMLStreamConstants.START_ELEMENT, null, "Forest");
+				while (r.nextTag() == XMLStreamConstants.START_ELEMENT) {
+					if (r.getLocalName().equals("Environment")) {
+						readEnvironment(r, result);
+						break;
+					}
+					skip(r);
+				}
+			}
+			finally {
+				r.close();
+			}
+		}
+		catch (XMLStreamException e) {
+			throw new IOException("Cannot read the environment of " + path, e);
+		}
+		return result;
+	}
+
+	/**
+	 * find the offsets of the Goal elements directly under the root, without parsing their content
+	 */
+	private long[] scan() throws IOException
+	{
+		long[] result = new long[16];
+		int count = 0;
+		try (InputStream stream = open(0))
+		{
+			ByteScanner in = new ByteScanner(stream);
+			// depth of the elements, the root is at depth 0
+			int depth = -1;
+			int c;
+			while ((c = in.read()) >= 0) {
+				if (c != '<') {
+					continue;
+				}
+				long start = in.position() - 1;
+				c = in.read();
+				if (c == '?') {
+					in.skipPast("?>");
+				}
+				else if (c == '!') {
+					c = in.read();
+					if (c == '-') {
+						in.skipPast("-->");
+					}
+					else if (c == '[') {
+						in.skipPast("]]>");
+					}
+					else {
+						in.skipPast(">");
+					}
+				}
+				else if (c == '/') {
+					in.skipPast(">");
+					depth--;
+				}
+				else {
+					// a start tag, read its name
+					StringBuilder name = new StringBuilder();
+					while (c >= 0 && c != '>' && c != '/' && !Character.isWhitespace(c)) {
+						name.append((char) c);
+						c = in.read();
+					}
+					// skip the attributes, remembering the last character before the end of the tag
+					int quote = 0, last = 0;
+					while (c >= 0 && (c != '>' || quote != 0)) {
+						if (quote != 0) {
+							if (c == quote) {
+								quote = 0;
+							}
+						}
+						else if (c == '"' || c == '\'') {
+							quote = c;
+						}
+						last = c;
+						c = in.read();
+					}
+					if (depth == 0 && name.toString().equals("Goal")) {
+						if (count == result.length) {
+							result = Arrays.copyOf(result, count * 2);
+						}
+						result[count++] = start;
+					}
+					if (last != '/') {
+						depth++;
+					}
+				}
+			}
+		}
+		return Arrays.copyOf(result, count);
+	}
+
+	/**
+	 * read the Literal elements of the environment, the reader is on the Environment start tag
+	 */
+	private static void readEnvironment(XMLStreamReader r, LiteralTable environment) throws XMLStreamException
+	{
+		while (r.nextTag() == XMLStreamConstants.START_ELEMENT) {
+			if (r.getLocalName().equals("Literal")) {
+				environment.add(r.getAttributeValue(null, "name"),
+						Boolean.parseBoolean(r.getAttributeValue(null, "value")));
+			}
+			skip(r);
+		}
+	}
+
+	/**
+	 * read a goal and everything below it, the reader is on the Goal start tag and ends on its end tag
+	 */
+	private static GoalNode readGoal(XMLStreamReader r, LiteralTable environment) throws XMLStreamException
+	{
+		GoalNode gl = new GoalNode(r.getAttributeValue(null, "name"),
+				parseCondition(r.getAttributeValue(null, "goal-condition"), environment));
+		while (r.nextTag() == XMLStreamConstants.START_ELEMENT) {
+			if (r.getLocalName().equals("Plan")) {
+				gl.getPlans().add(readPlan(r, environment));
+			}
+			else if (r.getLocalName().equals("Summary")) {
+				gl.setSummary(readSummary(r, environment));
+			}
+			else {
+				skip(r);
+			}
+		}
+		return gl;
+	}
+
+	/**
+	 * read a plan and everything below it, the reader is on the Plan start tag and ends on its end tag
+	 */
+	private static PlanNode readPlan(XMLStreamReader r, LiteralTable environment) throws XMLStreamException
+	{
+		PlanNode pl = new PlanNode(r.getAttributeValue(null, "name"),
+				parseCondition(r.getAttributeValue(null, "precondition"), environment));
+		while (r.nextTag() == XMLStreamConstants.START_ELEMENT) {
+			if (r.getLocalName().equals("Goal")) {
+				pl.getPlanBody().add(readGoal(r, environment));
+			}
+			else if (r.getLocalName().equals("Action")) {
+				pl.getPlanBody().add(new ActionNode(r.getAttributeValue(null, "name"),
+						parseCondition(r.getAttributeValue(null, "precondition"), environment),
+						parseCondition(r.getAttributeValue(null, "postcondition"), environment)));
+				skip(r);
+			}
+			else if (r.getLocalName().equals("Summary")) {
+				pl.setSummary(readSummary(r, environment));
+			}
+			else {
+				skip(r);
+			}
+		}
+		return pl;
+	}
+
+	/**
+	 * read the summary information of a goal or a plan, the reader is on the Summary start tag and ends on its end tag
+	 */
+	private static Summary readSummary(XMLStreamReader r, LiteralTable environment) throws XMLStreamException
+	{
+		Summary summary = new Summary(parseCondition(r.getAttributeValue(null, "must-precondition"), environment),
+				parseCondition(r.getAttributeValue(null, "may-precondition"), environment),
+				parseCondition(r.getAttributeValue(null, "must-effect"), environment),
+				parseCondition(r.getAttributeValue(null, "may-effect"), environment));
+		skip(r);
+		return summary;
+	}
+
+	/**
+	 * skip an element, the reader is on its start tag and ends on its end tag
+	 */
+	private static void skip(XMLStreamReader r) throws XMLStreamException
+	{
+		int depth = 1;
+		while (depth > 0) {
+			int event = r.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				depth++;
+			}
+			else if (event == XMLStreamConstants.END_ELEMENT) {
+				depth--;
+			}
+		}
+	}
+
+	/**
+	 * parse a condition attribute of the form "(id,state), (id,state);"
+	 * @param condition The attribute, may be null
+	 * @param environment The environment the literals come from
+	 * @return the condition, as a condition of the environment
+	 */
+	static Condition parseCondition(String condition, LiteralTable environment)
+	{
+		if (condition == null) {
+			return Condition.EMPTY;
+		}
+		ArrayList<Literal> result = new ArrayList<>();
+		int open = condition.indexOf('(');
+		while (open >= 0) {
+			int close = condition.indexOf(')', open);
+			int comma = condition.lastIndexOf(',', close);
+			if (close < 0 || comma <= open) {
+				throw new IllegalArgumentException("Malformed condition " + condition);
+			}
+			result.add(environment.get(condition.substring(open + 1, comma),
+					Boolean.parseBoolean(condition.substring(comma + 1, close))));
+			open = condition.indexOf('(', close);
+		}
+		return environment.condition(result);
+	}
+
+	/**
+	 * Reads the bytes of a stream one by one through a buffer, keeping track of the position
+	 */
+	private static class ByteScanner
+	{
+		final private InputStream in;
+		final private byte[] buffer = new byte[1 << 16];
+		/** position in the stream of the start of the buffer */
+		private long start;
+		/** position in the buffer of the next byte and number of bytes in the buffer */
+		private int next, limit;
+
+		ByteScanner(InputStream in)
+		{
+			this.in = in;
+		}
+
+		/** @return the position of the next byte */
+		long position()
+		{
+			return start + next;
+		}
+
+		/** @return the next byte, -1 at the end of the stream */
+		int read() throws IOException
+		{
+			if (next == limit) {
+				start += limit;
+				next = 0;
+				limit = Math.max(0, in.read(buffer));
+				if (limit == 0) {
+					return -1;
+				}
+			}
+			return buffer[next++] & 0xFF;
+		}
+
+		/** skip past the next occurrence of a short ASCII string */
+		void skipPast(String end) throws IOException
+		{
+			// the last bytes read, the most recent in the lowest byte
+			int window = 0, target = 0, mask = (1 << (8 * end.length())) - 1, c;
+			for (int i = 0; i < end.length(); i++) {
+				target = target << 8 | end.charAt(i);
+			}
+			while ((c = read()) >= 0) {
+				window = (window << 8 | c) & mask;
+				if (window == target) {
+					return;
+				}
+			}
+		}
+	}
+}
@@ -25,7 +25,7 @@ package uno.gpt.generators;
 
 import java.io.*;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.List;
 
 import org.jdom2.Attribute;
 import org.jdom2.Document;
@@ -50,7 +50,7 @@ class XMLWriter
 	 * @param goalForests The GPT forest
 	 * @param path The file to write to
 	 */
-	void CreateXML(HashMap<String, Literal> environment, ArrayList<GoalNode> goalForests, String path) {
+	void CreateXML(LiteralTable environment, ArrayList<GoalNode> goalForests, String path) {
 		try
 		{
 			Element forest = new Element("Forest");
@@ -58,7 +58,7 @@ class XMLWriter
 			// Small, short forest of variables
 			Element environmentElement = new Element("Environment");
 			// Write all the variables to this element
-			for (Literal envVar: environment.values()) {
+			for (Literal envVar: environment.getEnvironment()) {
 				writeEnvVar(envVar, environmentElement);
 			}
 			// Add the environment element to the XML
@@ -101,7 +101,7 @@ class XMLWriter
 		plan.setAttribute(new Attribute("name", pl.getName()));
 
 		// precondition
-		ArrayList<Literal> st = pl.getPre();
+		List<Literal> st = pl.getPre();
 		
 		if(st != null && st.size() > 0){
 			StringBuilder pre = new StringBuilder();
@@ -143,7 +143,7 @@ class XMLWriter
 		Element action = new Element("Action");
 		action.setAttribute(new Attribute("name", act.getName()));
 		// pre-condition
-		ArrayList<Literal> st = act.getPreC();
+		List<Literal> st = act.getPreC();
 		if(st != null && st.size() > 0){
 			StringBuilder pre = new StringBuilder();
 			for(int i = 0 ; i < st.size(); i++)
@@ -186,7 +186,7 @@ class XMLWriter
 		goal.setAttribute(new Attribute("name", gl.getName()));
 
 		// goal-condition
-		ArrayList<Literal> st = gl.getGoalConds();
+		List<Literal> st = gl.getGoalConds();
 		if(st != null && st.size() > 0){
 			StringBuilder goalCond = new StringBuilder();
 			for(int i = 0 ; i < st.size(); i++)
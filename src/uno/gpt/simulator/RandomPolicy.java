@@ -0,0 +1,56 @@
+/*
+ * Copyright 2021 Yuan Yao
+ * University of Nottingham
+ * Zhejiang University of Technology
+ * Email: yaoyuan@zjut.edu.cn (yuanyao1990yy@icloud.com)
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details
+ *  <http://www.gnu.org/licenses/gpl-3.0.html>.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uno.gpt.simulator;
+
+import java.util.SplittableRandom;
+
+/**
+ * @version 1.0
+ *
+ * Chooses intentions and plans uniformly at random, the policy of random rollouts. A policy must not be shared
+ * between threads: give every thread its own, for instance with a seed derived from the index of the rollout.
+ */
+public class RandomPolicy implements SchedulingPolicy
+{
+	/** the random stream */
+	final private SplittableRandom random;
+
+	/**
+	 * @param seed The seed of the random stream
+	 */
+	public RandomPolicy(long seed)
+	{
+		this.random = new SplittableRandom(seed);
+	}
+
+	@Override
+	public int selectIntention(Simulation simulation, int[] candidates, int count)
+	{
+		return count == 1 ? 0 : random.nextInt(count);
+	}
+
+	@Override
+	public int selectPlan(Simulation simulation, int intention, int[] plans, int count)
+	{
+		return count == 1 ? 0 : random.nextInt(count);
+	}
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2021 Yuan Yao
+ * University of Nottingham
+ * Zhejiang University of Technology
+ * Email: yaoyuan@zjut.edu.cn (yuanyao1990yy@icloud.com)
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details
+ *  <http://www.gnu.org/licenses/gpl-3.0.html>.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uno.gpt.simulator;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.LongFunction;
+import java.util.stream.IntStream;
+
+import uno.gpt.structure.Seeds;
+
+/**
+ * @version 1.0
+ *
+ * Runs many simulations from the same starting point in parallel, as the rollouts of a Monte-Carlo scheduler do.
+ * Every thread works on its own copy of the starting simulation, restored from a snapshot before each rollout, and
+ * every rollout gets its own policy, seeded from the index of the rollout, so the results do not depend on the number
+ * of threads.
+ */
+public class Rollouts
+{
+	private Rollouts() {}
+
+	/**
+	 * run random rollouts
+	 * @param start The starting point, which is not changed
+	 * @param count The number of rollouts
+	 * @param seed The seed of the rollouts
+	 * @param maxSteps The largest number of steps of a rollout
+	 * @param threads The number of threads
+	 * @return the number of intentions finished by each rollout
+	 */
+	public static int[] run(Simulation start, int count, long seed, long maxSteps, int threads)
+	{
+		return run(start, count, seed, maxSteps, threads, RandomPolicy::new);
+	}
+
+	/**
+	 * run rollouts
+	 * @param start The starting point, which is not changed
+	 * @param count The number of rollouts
+	 * @param seed The seed of the rollouts
+	 * @param maxSteps The largest number of steps of a rollout
+	 * @param threads The number of threads
+	 * @param policies Creates the policy of a rollout from its seed
+	 * @return the number of intentions finished by each rollout
+	 */
+	public static int[] run(Simulation start, int count, long seed, long maxSteps, int threads,
+			LongFunction<SchedulingPolicy> policies)
+	{
+		Simulation.Snapshot origin = start.snapshot();
+		ThreadLocal<Simulation> copies = ThreadLocal.withInitial(start::copy);
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			return pool.submit(() -> IntStream.range(0, count).parallel().map(i -> {
+				Simulation simulation = copies.get();
+				simulation.restore(origin);
+				simulation.run(policies.apply(Seeds.derive(seed, i)), maxSteps);
+				return simulation.getFinishedCount();
+			}).toArray()).join();
+		} finally {
+			pool.shutdown();
+		}
+	}
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2021 Yuan Yao
+ * University of Nottingham
+ * Zhejiang University of Technology
+ * Email: yaoyuan@zjut.edu.cn (yuanyao1990yy@icloud.com)
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details
+ *  <http://www.gnu.org/licenses/gpl-3.0.html>.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uno.gpt.simulator;
+
+/**
+ * @version 1.0
+ *
+ * Progresses the intentions in turn, skipping those which cannot progress, and adopts the first applicable plan of a
+ * goal, in the order of the tree.
+ */
+public class RoundRobinPolicy implements SchedulingPolicy
+{
+	/** the intention progressed last, -1 before the first step */
+	private int last = -1;
+
+	@Override
+	public int selectIntention(Simulation simulation, int[] candidates, int count)
+	{
+		for (int i = 0; i < count; i++) {
+			if (candidates[i] > last) {
+				last = candidates[i];
+				return i;
+			}
+		}
+		last = candidates[0];
+		return 0;
+	}
+
+	@Override
+	public int selectPlan(Simulation simulation, int intention, int[] plans, int count)
+	{
+		return 0;
+	}
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2021 Yuan Yao
+ * University of Nottingham
+ * Zhejiang University of Technology
+ * Email: yaoyuan@zjut.edu.cn (yuanyao1990yy@icloud.com)
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details
+ *  <http://www.gnu.org/licenses/gpl-3.0.html>.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uno.gpt.simulator;
+
+/**
+ * @version 1.0
+ *
+ * Decides, at every step of a {@link Simulation}, which intention progresses and, when that intention is pursuing a
+ * goal, which of its applicable plans is adopted. A policy may keep state between steps; a policy used by several
+ * simulations at the same time must be thread-safe.
+ */
+public interface SchedulingPolicy
+{
+	/**
+	 * choose the intention to progress
+	 * @param simulation The simulation
+	 * @param candidates The intentions which can progress, in increasing order
+	 * @param count The number of candidates, at least 1
+	 * @return the position in candidates of the chosen intention
+	 */
+	int selectIntention(Simulation simulation, int[] candidates, int count);
+
+	/**
+	 * choose a plan for the goal an intention is pursuing
+	 * @param simulation The simulation, {@link Simulation#getForest()} describes the plans
+	 * @param intention The intention
+	 * @param plans The nodes of the plans of the goal whose precondition holds, in the order of the goal
+	 * @param count The number of plans, at least 1
+	 * @return the position in plans of the chosen plan
+	 */
+	int selectPlan(Simulation simulation, int intention, int[] plans, int count);
+}
@@ -0,0 +1,376 @@
+/*
+ * Copyright 2021 Yuan Yao
+ * University of Nottingham
+ * Zhejiang University of Technology
+ * Email: yaoyuan@zjut.edu.cn (yuanyao1990yy@icloud.com)
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details
+ *  <http://www.gnu.org/licenses/gpl-3.0.html>.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uno.gpt.simulator;
+
+import java.util.List;
+
+import uno.gpt.structure.FlatForest;
+import uno.gpt.structure.GoalNode;
+import uno.gpt.structure.LiteralTable;
+
+/**
+ * @version 1.0
+ *
+ * Executes a set of intentions, one per top-level goal, interleaved by a {@link SchedulingPolicy}.
+ *
+ * An intention is a stack of frames, a goal it pursues or a plan it executes with the position of its next step.
+ * A step of the simulation progresses one intention which can progress, chosen by the policy:
+ * <ul>
+ * <li>if the intention pursues a goal, the policy adopts one of the plans of the goal whose precondition holds;</li>
+ * <li>otherwise, the next step of its plan is an action whose precondition holds, and its postcondition is applied.</li>
+ * </ul>
+ * After a step, the intention moves on by itself: a subgoal is pushed when its plan reaches it; a plan which has
+ * executed all its steps is popped; a goal whose goal-condition holds when it is reached, or when its plan is over,
+ * is achieved and its parent plan moves to its next step, otherwise the goal is pursued again. An intention whose top-level goal is achieved is finished. An intention whose goal has no applicable plan, or
+ * whose next action cannot be executed, waits until other intentions change the state.
+ *
+ * The environment is a {@link State} and the stacks of all the intentions live in a single int array, so a whole
+ * simulation is saved by a {@link #snapshot()} and restored by {@link #restore(Snapshot)} with a few array copies.
+ * A simulation is not thread-safe, but {@link #copy()} gives independent simulations sharing the same trees. The trees
+ * are run in their {@link FlatForest} form, and nodes are designated by their number in it.
+ */
+public class Simulation
+{
+	/** the trees */
+	final private FlatForest forest;
+
+	/** the state of the environment */
+	final private State state;
+
+	/** the frames of intention i start at stacks[i * stride], a frame being a node and the position of its next step */
+	final private int[] stacks;
+
+	/** the number of ints in the frames of each intention, 0 when it is finished */
+	final private int[] sizes;
+
+	/** the number of ints reserved for each intention */
+	final private int stride;
+
+	/** the number of steps done */
+	private long steps;
+
+	/** buffers handed over to the policy */
+	final private int[] candidates, plans;
+
+	/**
+	 * constructor of a simulation starting from the initial state of an environment
+	 * @param environment The environment, the literals of the trees must be its variables
+	 * @param intentions The top-level goals, one intention is created for each of them
+	 */
+	public Simulation(LiteralTable environment, List<GoalNode> intentions)
+	{
+		this(FlatForest.of(environment, intentions));
+	}
+
+	/**
+	 * constructor of a simulation starting from the initial state of the environment of a forest
+	 * @param forest The forest, an intention is created for each of its top-level goals
+	 */
+	public Simulation(FlatForest forest)
+	{
+		this(forest, State.initial(forest.getEnvironment()));
+	}
+
+	private Simulation(FlatForest forest, State state)
+	{
+		this.forest = forest;
+		this.state = state;
+		int depth = 0, maxPlans = 0;
+		for (int n = 0; n < forest.size(); n++) {
+			if (forest.getKind(n) == FlatForest.GOAL) {
+				depth = Math.max(depth, forest.getDepth(n));
+				maxPlans = Math.max(maxPlans, forest.getChildCount(n));
+			}
+		}
+		// a frame for each goal and plan of the deepest path
+		this.stride = 2 * (depth + 2);
+		this.stacks = new int[forest.getRootCount() * stride];
+		this.sizes = new int[forest.getRootCount()];
+		this.candidates = new int[forest.getRootCount()];
+		this.plans = new int[maxPlans];
+		for (int i = 0; i < forest.getRootCount(); i++) {
+			push(i, i);
+			settle(i);
+		}
+	}
+
+	/**
+	 * @return an independent copy of this simulation, in the same state
+	 */
+	public Simulation copy()
+	{
+		Simulation copy = new Simulation(forest, state.copy());
+		copy.restore(snapshot());
+		return copy;
+	}
+
+	/** @return the state of the environment, which must not be changed during a step */
+	public State getState()
+	{
+		return state;
+	}
+
+	/** @return the number of intentions */
+	public int getIntentionCount()
+	{
+		return sizes.length;
+	}
+
+	/** @return the number of steps done */
+	public long getStepCount()
+	{
+		return steps;
+	}
+
+	/** @return the trees, in which the nodes handed over to a policy are numbered */
+	public FlatForest getForest()
+	{
+		return forest;
+	}
+
+	/**
+	 * @param intention An intention
+	 * @return whether its top-level goal has been achieved
+	 */
+	public boolean isFinished(int intention)
+	{
+		return sizes[intention] == 0;
+	}
+
+	/** @return the number of finished intentions */
+	public int getFinishedCount()
+	{
+		int count = 0;
+		for (int size : sizes) {
+			if (size == 0) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * @param intention An intention
+	 * @return the goal it pursues or the action it executes next, -1 if it is finished
+	 */
+	public int getNext(int intention)
+	{
+		int size = sizes[intention];
+		if (size == 0) {
+			return -1;
+		}
+		int top = intention * stride + size - 2;
+		int node = stacks[top];
+		return forest.getKind(node) == FlatForest.GOAL ? node : next(node, stacks[top + 1]);
+	}
+
+	/**
+	 * @param intention An intention
+	 * @return whether it can progress in the current state
+	 */
+	public boolean canProgress(int intention)
+	{
+		int size = sizes[intention];
+		if (size == 0) {
+			return false;
+		}
+		int top = intention * stride + size - 2;
+		int node = stacks[top];
+		if (forest.getKind(node) == FlatForest.PLAN) {
+			return holds(next(node, stacks[top + 1]));
+		}
+		for (int plan = forest.getFirstChild(node), end = plan + forest.getChildCount(node); plan < end; plan++) {
+			if (holds(plan)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * do a step
+	 * @param policy The scheduling policy
+	 * @return the intention progressed, -1 if no intention can progress
+	 */
+	public int step(SchedulingPolicy policy)
+	{
+		int count = 0;
+		for (int i = 0; i < sizes.length; i++) {
+			if (canProgress(i)) {
+				candidates[count++] = i;
+			}
+		}
+		if (count == 0) {
+			return -1;
+		}
+		int intention = candidates[policy.selectIntention(this, candidates, count)];
+		int top = intention * stride + sizes[intention] - 2;
+		int node = stacks[top];
+		if (forest.getKind(node) == FlatForest.GOAL) {
+			count = 0;
+			for (int plan = forest.getFirstChild(node), end = plan + forest.getChildCount(node); plan < end; plan++) {
+				if (holds(plan)) {
+					plans[count++] = plan;
+				}
+			}
+			push(intention, plans[policy.selectPlan(this, intention, plans, count)]);
+		}
+		else {
+			int post = forest.getPostcondition(next(node, stacks[top + 1]));
+			for (int i = forest.getConditionStart(post), end = forest.getConditionEnd(post); i < end; i++) {
+				state.apply(forest.getLiteralCode(i));
+			}
+			stacks[top + 1]++;
+		}
+		settle(intention);
+		steps++;
+		return intention;
+	}
+
+	/**
+	 * do steps until every intention is finished, no intention can progress or a number of steps is reached
+	 * @param policy The scheduling policy
+	 * @param maxSteps The largest number of steps
+	 * @return the number of steps done
+	 */
+	public long run(SchedulingPolicy policy, long maxSteps)
+	{
+		long done = 0;
+		while (done < maxSteps && step(policy) >= 0) {
+			done++;
+		}
+		return done;
+	}
+
+	/** @return a snapshot of the simulation */
+	public Snapshot snapshot()
+	{
+		Snapshot snapshot = new Snapshot(state.words.length, stacks.length, sizes.length);
+		snapshot(snapshot);
+		return snapshot;
+	}
+
+	/**
+	 * save the simulation in a snapshot, so that saving it repeatedly allocates nothing
+	 * @param snapshot A snapshot of this simulation or of a copy of it
+	 */
+	public void snapshot(Snapshot snapshot)
+	{
+		System.arraycopy(state.words, 0, snapshot.words, 0, state.words.length);
+		System.arraycopy(stacks, 0, snapshot.stacks, 0, stacks.length);
+		System.arraycopy(sizes, 0, snapshot.sizes, 0, sizes.length);
+		snapshot.steps = steps;
+	}
+
+	/**
+	 * bring the simulation back to a snapshot
+	 * @param snapshot A snapshot of this simulation or of a copy of it
+	 */
+	public void restore(Snapshot snapshot)
+	{
+		System.arraycopy(snapshot.words, 0, state.words, 0, state.words.length);
+		System.arraycopy(snapshot.stacks, 0, stacks, 0, stacks.length);
+		System.arraycopy(snapshot.sizes, 0, sizes, 0, sizes.length);
+		steps = snapshot.steps;
+	}
+
+	/** @return whether the goal-condition of a goal, or the precondition of a plan or an action, holds */
+	private boolean holds(int node)
+	{
+		int c = forest.getCondition(node);
+		for (int i = forest.getConditionStart(c), end = forest.getConditionEnd(c); i < end; i++) {
+			if (!state.holds(forest.getLiteralCode(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/** @return the step of a plan at a position */
+	private int next(int plan, int position)
+	{
+		return forest.getFirstChild(plan) + position;
+	}
+
+	/** push the frame of a goal or a plan on an intention */
+	private void push(int intention, int node)
+	{
+		int top = intention * stride + sizes[intention];
+		stacks[top] = node;
+		stacks[top + 1] = 0;
+		sizes[intention] += 2;
+	}
+
+	/**
+	 * move an intention on until it pursues a goal whose goal-condition does not hold, its next step is an action,
+	 * or it is finished
+	 */
+	private void settle(int intention)
+	{
+		int base = intention * stride;
+		while (sizes[intention] > 0) {
+			int top = base + sizes[intention] - 2;
+			int node = stacks[top];
+			if (forest.getKind(node) == FlatForest.GOAL) {
+				if (!holds(node)) {
+					return;
+				}
+				// the goal is achieved, its parent plan moves to its next step
+				sizes[intention] -= 2;
+				if (sizes[intention] > 0) {
+					stacks[top - 1]++;
+				}
+				continue;
+			}
+			int position = stacks[top + 1];
+			if (position == forest.getChildCount(node)) {
+				// the plan is over, its goal is checked again
+				sizes[intention] -= 2;
+				continue;
+			}
+			int step = next(node, position);
+			if (forest.getKind(step) == FlatForest.ACTION) {
+				return;
+			}
+			push(intention, step);
+		}
+	}
+
+	/**
+	 * A saved simulation
+	 */
+	public static final class Snapshot
+	{
+		final long[] words;
+
+		final int[] stacks, sizes;
+
+		long steps;
+
+		private Snapshot(int words, int stacks, int sizes)
+		{
+			this.words = new long[words];
+			this.stacks = new int[stacks];
+			this.sizes = new int[sizes];
+		}
+	}
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2021 Yuan Yao
+ * University of Nottingham
+ * Zhejiang University of Technology
+ * Email: yaoyuan@zjut.edu.cn (yuanyao1990yy@icloud.com)
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details
+ *  <http://www.gnu.org/licenses/gpl-3.0.html>.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uno.gpt.simulator;
+
+import java.util.Arrays;
+
+import uno.gpt.structure.Literal;
+import uno.gpt.structure.LiteralTable;
+
+/**
+ * @version 1.0
+ *
+ * The state of the environment during a simulation: the value of every variable of a {@link LiteralTable}, one bit
+ * per variable, indexed like the table.
+ */
+public final class State
+{
+	/** the values, 64 variables per word */
+	final long[] words;
+
+	/** the number of variables */
+	final private int size;
+
+	/**
+	 * constructor of a state where every variable is false
+	 * @param size The number of variables
+	 */
+	public State(int size)
+	{
+		this.size = size;
+		this.words = new long[(size + 63) >>> 6];
+	}
+
+	/**
+	 * @param environment The environment
+	 * @return the initial state of the environment
+	 */
+	public static State initial(LiteralTable environment)
+	{
+		State state = new State(environment.size());
+		for (int i = 0; i < environment.size(); i++) {
+			state.set(i, environment.getInitialState(i));
+		}
+		return state;
+	}
+
+	/** @return the number of variables */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * @param variable The index of a variable
+	 * @return its value
+	 */
+	public boolean get(int variable)
+	{
+		return (words[variable >>> 6] & 1L << variable) != 0;
+	}
+
+	/**
+	 * @param variable The index of a variable
+	 * @param value Its new value
+	 */
+	public void set(int variable, boolean value)
+	{
+		if (value) {
+			words[variable >>> 6] |= 1L << variable;
+		}
+		else {
+			words[variable >>> 6] &= ~(1L << variable);
+		}
+	}
+
+	/**
+	 * @param literal A canonical literal of the environment of this state
+	 * @return whether the literal holds
+	 */
+	public boolean holds(Literal literal)
+	{
+		return get(literal.getIndex()) == literal.getState();
+	}
+
+	/**
+	 * @param code The code of a literal, as in a {@link uno.gpt.structure.FlatForest}
+	 * @return whether the literal holds
+	 */
+	public boolean holds(int code)
+	{
+		return (words[code >>> 7] >>> (code >>> 1) & 1) == (code & 1);
+	}
+
+	/**
+	 * make a literal hold
+	 * @param code The code of a literal, as in a {@link uno.gpt.structure.FlatForest}
+	 */
+	public void apply(int code)
+	{
+		set(code >>> 1, (code & 1) == 1);
+	}
+
+	/** @return a copy of this state */
+	public State copy()
+	{
+		State copy = new State(size);
+		copy.copyFrom(this);
+		return copy;
+	}
+
+	/**
+	 * overwrite this state with another state of the same environment
+	 * @param other The state to copy
+	 */
+	public void copyFrom(State other)
+	{
+		if (other.size != size) {
+			throw new IllegalArgumentException("States of " + other.size + " and " + size + " variables");
+		}
+		System.arraycopy(other.words, 0, words, 0, words.length);
+	}
+
+	@Override
+	public boolean equals(Object o)
+	{
+		return o instanceof State && ((State) o).size == size && Arrays.equals(((State) o).words, words);
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return Arrays.hashCode(words);
+	}
+}
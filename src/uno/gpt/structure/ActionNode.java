@@ -20,40 +20,58 @@
  */
 
 package uno.gpt.structure;
-import java.util.ArrayList;
+import java.util.List;
 
 /**
- * @version 3.0
+ * @version 4.0
  */
 public class ActionNode extends Node{
 	// Action -> ActionName {Pre-condition}{post-condition}
 	/** precondition */
-	final private ArrayList<Literal> prec;
+	final private Condition prec;
 	/** postcondition */
-	final private ArrayList<Literal> postc;
+	final private Condition postc;
 
 	public ActionNode(String name){
 		super(name);
-		this.prec = new ArrayList<>();
-		this.postc = new ArrayList<>();
+		this.prec = Condition.EMPTY;
+		this.postc = Condition.EMPTY;
 	}
 
-	public ActionNode(String name, ArrayList<Literal> precondition, ArrayList<Literal> postcondition) {
+	public ActionNode(String name, List<Literal> precondition, List<Literal> postcondition) {
 		super(name);
-		this.prec = precondition;
-		this.postc = postcondition;
+		this.prec = Condition.of(precondition);
+		this.postc = Condition.of(postcondition);
+	}
+
+	public ActionNode(long id, List<Literal> precondition, List<Literal> postcondition) {
+		super(id);
+		this.prec = Condition.of(precondition);
+		this.postc = Condition.of(postcondition);
 	}
 	
 	/** method to return the precondition of this action */
-	public ArrayList<Literal> getPreC()
+	public Condition getPreC()
 	{
 		return this.prec;
 	}
 	
 	/** method to return the postcondition of this action */
-	public ArrayList<Literal> getPostC()
+	public Condition getPostC()
 	{
 		return this.postc;
 	}
+
+	/** method to return the summary information of this action, its precondition and postcondition */
+	@Override
+	public Summary getSummary()
+	{
+		Summary summary = super.getSummary();
+		if (summary == null) {
+			summary = new Summary(prec, prec, postc, postc);
+			setSummary(summary);
+		}
+		return summary;
+	}
 	
 }
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2021 Yuan Yao
+ * University of Nottingham
+ * Zhejiang University of Technology
+ * Email: yaoyuan@zjut.edu.cn (yuanyao1990yy@icloud.com)
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details
+ *  <http://www.gnu.org/licenses/gpl-3.0.html>.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uno.gpt.structure;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * @version 1.0
+ *
+ * An immutable condition, i.e. a vector of literals, as stored by goals, plans and actions. Conditions are compared
+ * by their literals. Those obtained from a {@link LiteralTable.Interner} are interned within its scope: the interner
+ * returns the same instance for the same literals, so a condition shared by several nodes of a tree is stored once,
+ * and only two conditions of the same interner can be compared with ==.
+ */
+public final class Condition extends AbstractList<Literal> implements RandomAccess {
+
+	/** the empty condition */
+	public static final Condition EMPTY = new Condition(new Literal[0], null);
+
+	/** the literals */
+	final private Literal[] literals;
+
+	/** the table whose canonical literals this condition holds, null if it is not built by a table */
+	final private LiteralTable table;
+
+	/** the hash code, computed once */
+	final private int hash;
+
+	Condition(Literal[] literals, LiteralTable table) {
+		this.literals = literals;
+		this.table = table;
+		this.hash = Arrays.hashCode(literals);
+	}
+
+	/**
+	 * @param literals some literals
+	 * @return a condition with these literals, the list itself if it is already a condition
+	 */
+	public static Condition of(List<Literal> literals) {
+		if (literals instanceof Condition) {
+			return (Condition) literals;
+		}
+		if (literals == null || literals.isEmpty()) {
+			return EMPTY;
+		}
+		return new Condition(literals.toArray(new Literal[0]), null);
+	}
+
+	/** @return the table whose canonical literals this condition holds, null if it is not built by a table */
+	LiteralTable getTable() {
+		return table;
+	}
+
+	@Override
+	public Literal get(int index) {
+		return literals[index];
+	}
+
+	@Override
+	public int size() {
+		return literals.length;
+	}
+
+	@Override
+	public boolean contains(Object o) {
+		for (Literal l : literals) {
+			if (l.equals(o)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (o == this) {
+			return true;
+		}
+		if (o instanceof Condition) {
+			Condition c = (Condition) o;
+			return hash == c.hash && Arrays.equals(literals, c.literals);
+		}
+		return super.equals(o);
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+}
@@ -0,0 +1,387 @@
+/*
+ * Copyright 2021 Yuan Yao
+ * University of Nottingham
+ * Zhejiang University of Technology
+ * Email: yaoyuan@zjut.edu.cn (yuanyao1990yy@icloud.com)
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details
+ *  <http://www.gnu.org/licenses/gpl-3.0.html>.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uno.gpt.structure;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+/**
+ * @version 1.0
+ *
+ * A frozen goal-plan forest laid out as arrays of ints, for the loops which traverse trees many times. Nodes are
+ * numbered breadth-first, the top-level goals first, so the children of a node have consecutive numbers, and every
+ * property of a node is an array indexed by its number: its kind, its first child, its number of children, its parent
+ * and its depth. Conditions are numbered too: the literals of condition c are the codes at positions
+ * {@link #getConditionStart(int)} to {@link #getConditionEnd(int)} - 1 of a shared array, a code being the index of
+ * the variable in the environment * 2 + (1 if the literal is true). Equal conditions, whether or not they are the
+ * same instance, are stored once.
+ *
+ * Usage: {@link #of(LiteralTable, List)} converts an object forest; the object forest is not referenced afterwards.
+ */
+public final class FlatForest {
+
+	public static final int GOAL = 0, PLAN = 1, ACTION = 2;
+
+	/** the environment */
+	final private LiteralTable environment;
+
+	/** the identity of each node, see {@link NodeId} */
+	final private long[] ids;
+
+	/** the name of each node without an identity, null if every node has one */
+	final private String[] names;
+
+	/** the kind of each node, GOAL, PLAN or ACTION */
+	final private int[] kind;
+
+	/** the first child of each node, the number its first child would have if it has none */
+	final private int[] firstChild;
+
+	/** the number of children of each node */
+	final private int[] childCount;
+
+	/** the parent of each node, -1 for the top-level goals */
+	final private int[] parent;
+
+	/** the depth of each node, 0 for the top-level goals */
+	final private int[] depth;
+
+	/** the goal-condition of each goal, the precondition of each plan or action */
+	final private int[] condition;
+
+	/** the postcondition of each action, -1 for the goals and plans */
+	final private int[] postcondition;
+
+	/** the literals of condition c are literals[conditionStart[c]] to literals[conditionStart[c + 1] - 1] */
+	final private int[] conditionStart, literals;
+
+	/** the number of top-level goals */
+	final private int rootCount;
+
+	private FlatForest(LiteralTable environment, long[] ids, String[] names, int[] kind, int[] firstChild,
+			int[] childCount, int[] parent, int[] depth, int[] condition, int[] postcondition, int[] conditionStart,
+			int[] literals, int rootCount) {
+		this.environment = environment;
+		this.ids = ids;
+		this.names = names;
+		this.kind = kind;
+		this.firstChild = firstChild;
+		this.childCount = childCount;
+		this.parent = parent;
+		this.depth = depth;
+		this.condition = condition;
+		this.postcondition = postcondition;
+		this.conditionStart = conditionStart;
+		this.literals = literals;
+		this.rootCount = rootCount;
+	}
+
+	/**
+	 * convert an object forest
+	 * @param environment The environment, the literals of the trees must be its variables
+	 * @param roots The top-level goals
+	 * @return the flattened forest
+	 */
+	public static FlatForest of(LiteralTable environment, List<GoalNode> roots) {
+		ArrayList<Node> order = new ArrayList<>(roots);
+		HashMap<Condition, Integer> numbers = new HashMap<>();
+		IntList kind = new IntList(), firstChild = new IntList(), childCount = new IntList(), parent = new IntList(),
+				depth = new IntList(), condition = new IntList(), postcondition = new IntList(),
+				conditionStart = new IntList(), literals = new IntList();
+		for (int i = 0; i < roots.size(); i++) {
+			parent.add(-1);
+			depth.add(0);
+		}
+		conditionStart.add(0);
+		// breadth-first, the children of a node being numbered when the node is converted
+		for (int n = 0; n < order.size(); n++) {
+			Node node = order.get(n);
+			List<? extends Node> children = List.of();
+			if (node instanceof GoalNode) {
+				kind.add(GOAL);
+				condition.add(number(((GoalNode) node).getGoalConds(), environment, numbers, conditionStart, literals));
+				postcondition.add(-1);
+				children = ((GoalNode) node).getPlans();
+			}
+			else if (node instanceof PlanNode) {
+				kind.add(PLAN);
+				condition.add(number(((PlanNode) node).getPre(), environment, numbers, conditionStart, literals));
+				postcondition.add(-1);
+				children = ((PlanNode) node).getPlanBody();
+			}
+			else {
+				ActionNode action = (ActionNode) node;
+				kind.add(ACTION);
+				condition.add(number(action.getPreC(), environment, numbers, conditionStart, literals));
+				postcondition.add(number(action.getPostC(), environment, numbers, conditionStart, literals));
+			}
+			firstChild.add(order.size());
+			childCount.add(children.size());
+			for (Node child : children) {
+				parent.add(n);
+				depth.add(depth.get(n) + 1);
+				order.add(child);
+			}
+		}
+		long[] ids = new long[order.size()];
+		String[] names = null;
+		for (int n = 0; n < ids.length; n++) {
+			ids[n] = order.get(n).getId();
+			if (ids[n] == NodeId.NONE) {
+				if (names == null) {
+					names = new String[ids.length];
+				}
+				names[n] = order.get(n).getName();
+			}
+		}
+		return new FlatForest(environment, ids, names, kind.toArray(), firstChild.toArray(), childCount.toArray(),
+				parent.toArray(), depth.toArray(), condition.toArray(), postcondition.toArray(),
+				conditionStart.toArray(), literals.toArray(), roots.size());
+	}
+
+	/**
+	 * number a condition, unless it has been numbered already
+	 * @return the number of the condition
+	 */
+	private static int number(Condition c, LiteralTable environment, HashMap<Condition, Integer> numbers,
+			IntList conditionStart, IntList literals) {
+		Integer number = numbers.get(c);
+		if (number == null) {
+			number = conditionStart.size() - 1;
+			numbers.put(c, number);
+			for (Literal l : c) {
+				literals.add(code(l, environment));
+			}
+			conditionStart.add(literals.size());
+		}
+		return number;
+	}
+
+	/**
+	 * @return the code of a literal, looked up by id if it is not a canonical literal of the environment
+	 */
+	private static int code(Literal l, LiteralTable environment) {
+		int index = l.getIndex();
+		if (index < 0 || index >= environment.size() || environment.get(index, l.getState()) != l) {
+			index = environment.indexOf(l.getId());
+			if (index < 0) {
+				throw new IllegalArgumentException("Literal " + l.getId() + " is not in the environment");
+			}
+		}
+		return index << 1 | (l.getState() ? 1 : 0);
+	}
+
+	/** @return the environment */
+	public LiteralTable getEnvironment() {
+		return environment;
+	}
+
+	/** @return the number of nodes */
+	public int size() {
+		return kind.length;
+	}
+
+	/** @return the number of top-level goals, which are nodes 0 to getRootCount() - 1 */
+	public int getRootCount() {
+		return rootCount;
+	}
+
+	/** @return the number of conditions */
+	public int getConditionCount() {
+		return conditionStart.length - 1;
+	}
+
+	/** @return the name of a node */
+	public String getName(int node) {
+		return ids[node] == NodeId.NONE ? names[node] : NodeId.toString(ids[node]);
+	}
+
+	/** @return the identity of a node, NodeId.NONE if its name is not of the generated form */
+	public long getId(int node) {
+		return ids[node];
+	}
+
+	/** @return the kind of a node, GOAL, PLAN or ACTION */
+	public int getKind(int node) {
+		return kind[node];
+	}
+
+	/** @return the first child of a node, meaningless if it has no children */
+	public int getFirstChild(int node) {
+		return firstChild[node];
+	}
+
+	/** @return the number of children of a node */
+	public int getChildCount(int node) {
+		return childCount[node];
+	}
+
+	/** @return the i-th child of a node */
+	public int getChild(int node, int i) {
+		return firstChild[node] + i;
+	}
+
+	/** @return the parent of a node, -1 for a top-level goal */
+	public int getParent(int node) {
+		return parent[node];
+	}
+
+	/** @return the depth of a node, 0 for a top-level goal */
+	public int getDepth(int node) {
+		return depth[node];
+	}
+
+	/** @return the goal-condition of a goal, the precondition of a plan or an action */
+	public int getCondition(int node) {
+		return condition[node];
+	}
+
+	/** @return the postcondition of an action, -1 for a goal or a plan */
+	public int getPostcondition(int node) {
+		return postcondition[node];
+	}
+
+	/** @return the position of the first literal of a condition */
+	public int getConditionStart(int condition) {
+		return conditionStart[condition];
+	}
+
+	/** @return the position after the last literal of a condition */
+	public int getConditionEnd(int condition) {
+		return conditionStart[condition + 1];
+	}
+
+	/** @return the code of the literal at a position */
+	public int getLiteralCode(int position) {
+		return literals[position];
+	}
+
+	/** @return the literal of a code */
+	public Literal getLiteral(int code) {
+		return environment.get(code >>> 1, (code & 1) == 1);
+	}
+
+	/**
+	 * @param condition A condition
+	 * @return its literals, as a condition of the environment
+	 */
+	public Condition getLiterals(int condition) {
+		ArrayList<Literal> result = new ArrayList<>(getConditionEnd(condition) - getConditionStart(condition));
+		for (int i = getConditionStart(condition); i < getConditionEnd(condition); i++) {
+			result.add(getLiteral(literals[i]));
+		}
+		return environment.condition(result);
+	}
+
+	/**
+	 * visit a node and the nodes below it, each node before its children, children in order
+	 * @param node The node
+	 * @param visitor Receives the nodes
+	 */
+	public void preorder(int node, IntConsumer visitor) {
+		int[] stack = new int[16];
+		int size = 0;
+		stack[size++] = node;
+		while (size > 0) {
+			int n = stack[--size];
+			visitor.accept(n);
+			int count = childCount[n];
+			if (size + count > stack.length) {
+				stack = Arrays.copyOf(stack, Math.max(stack.length * 2, size + count));
+			}
+			// pushed in reverse so that the first child is visited first
+			for (int i = count - 1; i >= 0; i--) {
+				stack[size++] = firstChild[n] + i;
+			}
+		}
+	}
+
+	/**
+	 * visit a node and the nodes below it, each node after its children, children in order
+	 * @param node The node
+	 * @param visitor Receives the nodes
+	 */
+	public void postorder(int node, IntConsumer visitor) {
+		// each entry is a node and the number of its children already visited
+		int[] stack = new int[32];
+		int size = 0;
+		stack[size++] = node;
+		stack[size++] = 0;
+		while (size > 0) {
+			int n = stack[size - 2], visited = stack[size - 1];
+			if (visited == childCount[n]) {
+				size -= 2;
+				visitor.accept(n);
+				continue;
+			}
+			stack[size - 1]++;
+			if (size + 2 > stack.length) {
+				stack = Arrays.copyOf(stack, stack.length * 2);
+			}
+			stack[size++] = firstChild[n] + visited;
+			stack[size++] = 0;
+		}
+	}
+
+	/**
+	 * @param node A node
+	 * @return the top-level goal of its tree
+	 */
+	public int getRoot(int node) {
+		while (parent[node] >= 0) {
+			node = parent[node];
+		}
+		return node;
+	}
+
+	/**
+	 * A growable list of ints
+	 */
+	private static final class IntList {
+
+		private int[] values = new int[16];
+
+		private int size;
+
+		void add(int value) {
+			if (size == values.length) {
+				values = Arrays.copyOf(values, size * 2);
+			}
+			values[size++] = value;
+		}
+
+		int get(int index) {
+			return values[index];
+		}
+
+		int size() {
+			return size;
+		}
+
+		int[] toArray() {
+			return Arrays.copyOf(values, size);
+		}
+	}
+}
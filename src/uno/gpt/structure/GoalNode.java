@@ -21,9 +21,10 @@
 
 package uno.gpt.structure;
 import java.util.ArrayList;
+import java.util.List;
 
 /**
- * @version 2.0
+ * @version 3.0
  */
 public class GoalNode extends Node 
 {
@@ -31,20 +32,31 @@ public class GoalNode extends Node
 	/** associated plans */
 	final private ArrayList<PlanNode> plans;
 	/** goalConds-condition */
-	final private ArrayList<Literal> goalConds;
+	final private Condition goalConds;
 
-	public GoalNode(String name, ArrayList<PlanNode> plan, ArrayList<Literal> goalConds)
+	public GoalNode(String name, ArrayList<PlanNode> plan, List<Literal> goalConds)
 	{
 		super(name);
 		this.plans = plan;
-		this.goalConds = goalConds;
+		this.goalConds = Condition.of(goalConds);
+	}
+
+	public GoalNode(String name, List<Literal> goalConds){
+		this(name, new ArrayList<>(), goalConds);
 	}
 
 	public GoalNode(String name){
-		super(name);
+		this(name, Condition.EMPTY);
+	}
+
+	public GoalNode(long id, List<Literal> goalConds){
+		super(id);
 		this.plans = new ArrayList<>();
-		this.goalConds = new ArrayList<>();
+		this.goalConds = Condition.of(goalConds);
+	}
 
+	public GoalNode(long id){
+		this(id, Condition.EMPTY);
 	}
 	
 	/** method to return the plans to achieve this goalConds*/
@@ -54,7 +66,7 @@ public class GoalNode extends Node
 	}
 
 	/** method to return the plans to achieve this goalConds*/
-	public ArrayList<Literal> getGoalConds()
+	public Condition getGoalConds()
 	{
 		return this.goalConds;
 	}
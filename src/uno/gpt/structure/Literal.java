@@ -21,7 +21,11 @@
 
 package uno.gpt.structure;
 /**
- * @version 3.0
+ * @version 4.0
+ *
+ * An immutable literal. Literals created by a {@link LiteralTable} are canonical: the table holds exactly one
+ * instance per variable and polarity, so they can be compared by reference or by index. Equality and hashing use the
+ * index of such literals rather than their id, so literals of different tables must not be mixed.
  */
 public class Literal implements Comparable<Literal> {
 
@@ -32,7 +36,15 @@ public class Literal implements Comparable<Literal> {
 	/**
 	 * state of the literal, i.e., its value
 	 */
-	private boolean state;
+	final private boolean state;
+	/**
+	 * index of the variable in its table, -1 if the literal does not belong to a table
+	 */
+	final private int index;
+	/**
+	 * the literal with the same id and the opposite state
+	 */
+	final private Literal negation;
 
 	/**
 	 * constructor
@@ -40,8 +52,31 @@ public class Literal implements Comparable<Literal> {
 	 * @param state
 	 */
 	public Literal(String id, boolean state) {
+		this(id, state, -1);
+	}
+
+	/**
+	 * constructor of a canonical literal, which also creates its negation
+	 * @param id
+	 * @param state
+	 * @param index the index of the variable in its table
+	 */
+	Literal(String id, boolean state, int index) {
 		this.id = id;
 		this.state = state;
+		this.index = index;
+		this.negation = new Literal(this);
+	}
+
+	/**
+	 * constructor of the negation of a literal
+	 * @param negation
+	 */
+	private Literal(Literal negation) {
+		this.id = negation.id;
+		this.state = !negation.state;
+		this.index = negation.index;
+		this.negation = negation;
 	}
 
 	/**
@@ -58,19 +93,24 @@ public class Literal implements Comparable<Literal> {
 		return state;
 	}
 
-	public void setState(boolean state) {
-		this.state = state;
+	/**
+	 * @return the index of the variable of this literal in its table, -1 if it does not belong to a table
+	 */
+	public int getIndex() {
+		return index;
 	}
 
 	/**
-	 * flip the state of this literal
-	 * @return the state after flipping
+	 * @return the literal with the same id and the opposite state
 	 */
-	public boolean flip(){
-		this.state = !this.state;
-		return this.state;
+	public Literal negate() {
+		return negation;
 	}
 
+	/**
+	 * literals of a table are compared by index and state, the others by id and state; a literal of a table is
+	 * never equal to a literal outside a table
+	 */
 	@Override
 	public boolean equals(Object o) {
 		if (this == o) return true;
@@ -78,9 +118,17 @@ public class Literal implements Comparable<Literal> {
 
 		Literal literal = (Literal) o;
 
+		if (index >= 0 || literal.index >= 0) {
+			return index == literal.index && state == literal.state;
+		}
 		return id.equals(literal.id) && (state == literal.state);
 	}
 
+	@Override
+	public int hashCode() {
+		return index >= 0 ? 2 * index + (state ? 1 : 0) : 31 * id.hashCode() + (state ? 1 : 0);
+	}
+
 	@Override
 	public int compareTo(Literal o) {
 		return this.getId().compareTo(o.getId());
@@ -91,9 +139,4 @@ public class Literal implements Comparable<Literal> {
 	{
 		return "(" + this.id + "," + this.state + ")";
 	}
-
-	@Override
-	public Literal clone(){
-		return new Literal(id, state);
-	}
 }
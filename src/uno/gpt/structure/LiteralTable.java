@@ -0,0 +1,350 @@
+/*
+ * Copyright 2021 Yuan Yao
+ * University of Nottingham
+ * Zhejiang University of Technology
+ * Email: yaoyuan@zjut.edu.cn (yuanyao1990yy@icloud.com)
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details
+ *  <http://www.gnu.org/licenses/gpl-3.0.html>.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uno.gpt.structure;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.function.IntPredicate;
+
+/**
+ * @version 1.0
+ *
+ * The environment: every variable gets a dense index, in the order the variables are added, and exactly two
+ * canonical literals, one for each state. The table also records the initial value of each variable, and builds
+ * the conditions over its literals; an {@link Interner} shares equal conditions within a scope, such as a tree, and
+ * is dropped with it, so that the memory of the table does not grow with the number of trees.
+ *
+ * Variables numbered in sequence, such as EV-0 to EV-9999999, can be added together as a range
+ * ({@link #addRange(String, int, int, IntPredicate)}): their ids are then computed from their index, and their
+ * literals are created the first time they are asked for, so a variable no tree uses only takes its initial value,
+ * one bit, and an empty slot for its literal.
+ */
+public class LiteralTable {
+
+	/**
+	 * A range of variables added together: the variable of index first + k has the id prefix + (number + k)
+	 */
+	private static final class Range {
+		final String prefix;
+		final int first, number, count;
+
+		Range(String prefix, int first, int number, int count) {
+			this.prefix = prefix;
+			this.first = first;
+			this.number = number;
+			this.count = count;
+		}
+	}
+
+	/** the canonical literal of each variable whose state is true, by index, null until it is first asked for */
+	private Literal[] literals;
+
+	/** number of variables */
+	private int size;
+
+	/** the index of each variable added on its own, by id */
+	final private HashMap<String, Integer> indexes;
+
+	/** the ranges of variables, in the order of their indexes */
+	final private ArrayList<Range> ranges;
+
+	/** the initial value of each variable, by index */
+	final private BitSet initial;
+
+	public LiteralTable() {
+		this.literals = new Literal[16];
+		this.indexes = new HashMap<>();
+		this.ranges = new ArrayList<>();
+		this.initial = new BitSet();
+	}
+
+	/**
+	 * add a variable
+	 * @param id the id of the variable
+	 * @param state its initial value
+	 * @return the index of the variable
+	 */
+	public synchronized int add(String id, boolean state) {
+		if (indexOf(id) >= 0) {
+			throw new IllegalArgumentException("Duplicate variable " + id);
+		}
+		int index = grow(1);
+		indexes.put(id, index);
+		literals[index] = new Literal(id, true, index);
+		initial.set(index, state);
+		return index;
+	}
+
+	/**
+	 * add a range of variables numbered in sequence, whose literals are only created when they are asked for
+	 * @param prefix the id of each variable without its number
+	 * @param number the number of the first variable, the ids being prefix + number to prefix + (number + count - 1)
+	 * @param count the number of variables
+	 * @param state gives the initial value of the k-th variable of the range, asked for k = 0 to count - 1 in order
+	 * @return the index of the first variable
+	 */
+	public synchronized int addRange(String prefix, int number, int count, IntPredicate state) {
+		if (number < 0 || count < 0 || number + count < 0) {
+			throw new IllegalArgumentException("Invalid range of " + count + " variables from " + prefix + number);
+		}
+		for (Range r : ranges) {
+			if (r.prefix.equals(prefix) && number < r.number + r.count && r.number < number + count) {
+				throw new IllegalArgumentException("Duplicate variables " + prefix + Math.max(number, r.number));
+			}
+		}
+		for (String id : indexes.keySet()) {
+			int n = number(id, prefix);
+			if (n >= number && n - number < count) {
+				throw new IllegalArgumentException("Duplicate variable " + id);
+			}
+		}
+		int first = grow(count);
+		ranges.add(new Range(prefix, first, number, count));
+		for (int k = 0; k < count; k++) {
+			if (state.test(k)) {
+				initial.set(first + k);
+			}
+		}
+		return first;
+	}
+
+	/**
+	 * make room for more variables
+	 * @return the index of the first of them
+	 */
+	private int grow(int count) {
+		int first = size;
+		size = Math.addExact(size, count);
+		if (size > literals.length) {
+			literals = Arrays.copyOf(literals, Math.max(size, literals.length * 2));
+		}
+		return first;
+	}
+
+	/**
+	 * @param id an id
+	 * @param prefix a prefix
+	 * @return the number following the prefix in the id, written without leading zeros, -1 if there is none
+	 */
+	private static int number(String id, String prefix) {
+		int length = id.length() - prefix.length();
+		if (!id.startsWith(prefix) || length < 1 || length > 10 || (id.charAt(prefix.length()) == '0' && length > 1)) {
+			return -1;
+		}
+		long n = 0;
+		for (int i = prefix.length(); i < id.length(); i++) {
+			char c = id.charAt(i);
+			if (c < '0' || c > '9') {
+				return -1;
+			}
+			n = n * 10 + (c - '0');
+		}
+		return n > Integer.MAX_VALUE ? -1 : (int) n;
+	}
+
+	/**
+	 * @return the range holding a variable, null if it was added on its own
+	 */
+	private Range range(int index) {
+		int low = 0, high = ranges.size() - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			Range r = ranges.get(mid);
+			if (index < r.first) {
+				high = mid - 1;
+			}
+			else if (index >= r.first + r.count) {
+				low = mid + 1;
+			}
+			else {
+				return r;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return the number of variables
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @param id the id of a variable
+	 * @return the index of the variable, -1 if there is no such variable
+	 */
+	public int indexOf(String id) {
+		Integer index = indexes.get(id);
+		if (index != null) {
+			return index;
+		}
+		for (Range r : ranges) {
+			int n = number(id, r.prefix);
+			if (n >= r.number && n - r.number < r.count) {
+				return r.first + n - r.number;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @param index the index of a variable
+	 * @return the id of the variable, without creating its literals
+	 */
+	public String getId(int index) {
+		Range r = range(index);
+		return r == null ? literal(index).getId() : r.prefix + (r.number + index - r.first);
+	}
+
+	/**
+	 * @param index the index of a variable
+	 * @param state the state
+	 * @return the canonical literal of the variable with this state
+	 */
+	public Literal get(int index, boolean state) {
+		Literal l = literal(index);
+		return state ? l : l.negate();
+	}
+
+	/**
+	 * @return the canonical literal of a variable whose state is true, created the first time it is asked for
+	 */
+	private Literal literal(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size);
+		}
+		// a literal seen without the lock is complete, its fields being final
+		Literal l = literals[index];
+		return l != null ? l : create(index);
+	}
+
+	private synchronized Literal create(int index) {
+		Literal l = literals[index];
+		if (l == null) {
+			l = literals[index] = new Literal(getId(index), true, index);
+		}
+		return l;
+	}
+
+	/**
+	 * @param id the id of a variable
+	 * @param state the state
+	 * @return the canonical literal of the variable with this state
+	 */
+	public Literal get(String id, boolean state) {
+		int index = indexOf(id);
+		if (index < 0) {
+			throw new IllegalArgumentException("Unknown variable " + id);
+		}
+		return get(index, state);
+	}
+
+	/**
+	 * @param index the index of a variable
+	 * @return the initial value of the variable
+	 */
+	public boolean getInitialState(int index) {
+		return initial.get(index);
+	}
+
+	/**
+	 * @param index the index of a variable
+	 * @return the canonical literal of the variable with its initial value
+	 */
+	public Literal getInitial(int index) {
+		return get(index, initial.get(index));
+	}
+
+	/**
+	 * The literals of the initial environment, in the order of their indexes. The literal of every variable is
+	 * created: the writers go through the indexes with {@link #getId(int)} and {@link #getInitialState(int)} instead.
+	 * @return the initial literals
+	 */
+	public ArrayList<Literal> getEnvironment() {
+		ArrayList<Literal> result = new ArrayList<>(size);
+		for (int index = 0; index < size; index++) {
+			result.add(getInitial(index));
+		}
+		return result;
+	}
+
+	/**
+	 * @param literals the literals of the condition, which must be literals of this table
+	 * @return a condition of this table with these literals, in the same order, the list itself if it already is one
+	 */
+	public Condition condition(List<Literal> literals) {
+		if (literals.isEmpty()) {
+			return Condition.EMPTY;
+		}
+		if (literals instanceof Condition && ((Condition) literals).getTable() == this) {
+			return (Condition) literals;
+		}
+		return new Condition(literals.toArray(new Literal[0]), this);
+	}
+
+	/**
+	 * @return a new interner of the conditions of this table
+	 */
+	public Interner interner() {
+		return new Interner();
+	}
+
+	/**
+	 * Interns the conditions of a table within a scope, e.g. the tree being generated: the same instance is returned
+	 * for every list of the same literals, in the same order, so the conditions shared by several nodes of the scope
+	 * are stored once and can be compared with ==. The conditions are held until the interner is dropped; conditions
+	 * from different interners are only equal, not identical. An interner is not thread-safe.
+	 */
+	public final class Interner {
+
+		/** the conditions interned so far */
+		final private HashMap<Condition, Condition> conditions = new HashMap<>();
+
+		private Interner() {
+		}
+
+		/**
+		 * intern a condition
+		 * @param literals the literals of the condition, which must be literals of the table
+		 * @return the interned condition
+		 */
+		public Condition condition(List<Literal> literals) {
+			Condition c = LiteralTable.this.condition(literals);
+			if (c.isEmpty()) {
+				return c;
+			}
+			Condition interned = conditions.putIfAbsent(c, c);
+			return interned == null ? c : interned;
+		}
+
+		/**
+		 * @return the number of distinct non-empty conditions interned
+		 */
+		public int size() {
+			return conditions.size();
+		}
+	}
+}
@@ -27,17 +27,52 @@ import java.util.ArrayList;
  */
 public abstract class Node
 {
-	/**  name */
+	/**  name, null if it is rendered from the identity */
 	final private String name;
 
+	/** packed identity, see {@link NodeId}, NodeId.NONE if the name is not of the generated form */
+	final private long id;
+
+	/** summary information */
+	private Summary summary;
+
 	Node(String name)
 	{
-		this.name = name;
+		// a name of the generated form is kept as its identity
+		this.id = NodeId.parse(name);
+		this.name = this.id == NodeId.NONE ? name : null;
+	}
+
+	Node(long id)
+	{
+		if (id == NodeId.NONE) {
+			throw new IllegalArgumentException("A node must have a name or an identity");
+		}
+		this.id = id;
+		this.name = null;
 	}
 	
 	/** return the name */
 	public String getName()
 	{
-		return this.name;
+		return this.name != null ? this.name : NodeId.toString(this.id);
+	}
+
+	/** return the packed identity, NodeId.NONE if the name is not of the generated form */
+	public long getId()
+	{
+		return this.id;
+	}
+
+	/** return the summary information, null if it has not been computed */
+	public Summary getSummary()
+	{
+		return this.summary;
+	}
+
+	/** set the summary information */
+	public void setSummary(Summary summary)
+	{
+		this.summary = summary;
 	}
 }
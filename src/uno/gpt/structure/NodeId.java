@@ -0,0 +1,149 @@
+/*
+ * Copyright 2021 Yuan Yao
+ * University of Nottingham
+ * Zhejiang University of Technology
+ * Email: yaoyuan@zjut.edu.cn (yuanyao1990yy@icloud.com)
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details
+ *  <http://www.gnu.org/licenses/gpl-3.0.html>.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uno.gpt.structure;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * @version 1.0
+ *
+ * The identity of a generated node packed in a long: the index of its tree, its kind and its ordinal among the nodes
+ * of its kind in the tree. The name of the node, e.g. T3-P12 for the plan 12 of the tree 3, is rendered from it only
+ * when it is asked for, so a node costs a long instead of a String. The tree takes the upper 31 bits, the kind the
+ * next 2 and the ordinal the lower 31.
+ */
+public final class NodeId {
+	/** the identity of no node, kept by the nodes whose name is not of the generated form */
+	public static final long NONE = -1;
+
+	/** the longest name, in bytes */
+	public static final int MAX_LENGTH = 1 + 10 + 2 + 10;
+
+	/** the letter of each kind, in the order of the kinds of {@link FlatForest} */
+	private static final byte[] LETTERS = {'G', 'P', 'A'};
+
+	private NodeId() {
+	}
+
+	/**
+	 * @param tree The index of the tree
+	 * @param kind {@link FlatForest#GOAL}, {@link FlatForest#PLAN} or {@link FlatForest#ACTION}
+	 * @param ordinal The ordinal of the node among the nodes of its kind in the tree
+	 * @return the identity of the node
+	 */
+	public static long of(int tree, int kind, int ordinal) {
+		if (tree < 0 || ordinal < 0 || kind < 0 || kind >= LETTERS.length) {
+			throw new IllegalArgumentException("No node " + tree + "/" + kind + "/" + ordinal);
+		}
+		return (long) tree << 33 | (long) kind << 31 | ordinal;
+	}
+
+	/** @return the index of the tree of a node */
+	public static int tree(long id) {
+		return (int) (id >>> 33);
+	}
+
+	/** @return the kind of a node */
+	public static int kind(long id) {
+		return (int) (id >>> 31) & 3;
+	}
+
+	/** @return the ordinal of a node among the nodes of its kind in its tree */
+	public static int ordinal(long id) {
+		return (int) id & 0x7FFFFFFF;
+	}
+
+	/**
+	 * render the name of a node in ASCII
+	 * @param id The identity of the node
+	 * @param bytes The array to write to, which must have {@link #MAX_LENGTH} bytes from the offset
+	 * @param offset The position of the first byte of the name
+	 * @return the position following the last byte of the name
+	 */
+	public static int render(long id, byte[] bytes, int offset) {
+		bytes[offset++] = 'T';
+		offset = digits(tree(id), bytes, offset);
+		bytes[offset++] = '-';
+		bytes[offset++] = LETTERS[kind(id)];
+		return digits(ordinal(id), bytes, offset);
+	}
+
+	private static int digits(int n, byte[] bytes, int offset) {
+		int end = offset;
+		for (int m = n; m >= 10; m /= 10) {
+			end++;
+		}
+		for (int i = end; i >= offset; i--) {
+			bytes[i] = (byte) ('0' + n % 10);
+			n /= 10;
+		}
+		return end + 1;
+	}
+
+	/** @return the name of a node */
+	public static String toString(long id) {
+		byte[] bytes = new byte[MAX_LENGTH];
+		return new String(bytes, 0, render(id, bytes, 0), StandardCharsets.US_ASCII);
+	}
+
+	/**
+	 * @param name The name of a node
+	 * @return the identity the name is rendered from, {@link #NONE} if the name is not of the generated form
+	 */
+	public static long parse(String name) {
+		int length = name.length();
+		if (length < 4 || name.charAt(0) != 'T') {
+			return NONE;
+		}
+		int dash = name.indexOf('-');
+		if (dash < 2 || dash + 2 >= length) {
+			return NONE;
+		}
+		int kind = -1;
+		for (int k = 0; k < LETTERS.length; k++) {
+			if (name.charAt(dash + 1) == LETTERS[k]) {
+				kind = k;
+			}
+		}
+		int tree = number(name, 1, dash), ordinal = number(name, dash + 2, length);
+		return kind < 0 || tree < 0 || ordinal < 0 ? NONE : of(tree, kind, ordinal);
+	}
+
+	/**
+	 * @return the number written in decimal between two positions of a string, without leading zeros, -1 if there
+	 * is none or it does not fit in an int
+	 */
+	private static int number(String s, int from, int to) {
+		if (to - from > 10 || (s.charAt(from) == '0' && to - from > 1)) {
+			return -1;
+		}
+		long n = 0;
+		for (int i = from; i < to; i++) {
+			char c = s.charAt(i);
+			if (c < '0' || c > '9') {
+				return -1;
+			}
+			n = n * 10 + (c - '0');
+		}
+		return n > Integer.MAX_VALUE ? -1 : (int) n;
+	}
+}
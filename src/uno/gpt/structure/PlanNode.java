@@ -23,9 +23,10 @@
 package uno.gpt.structure;
 
 import java.util.ArrayList;
+import java.util.List;
 
 /**
- * @version 3.0
+ * @version 4.0
  * @author yuanyao
  */
 public class PlanNode extends Node
@@ -35,23 +36,35 @@ public class PlanNode extends Node
 	final private ArrayList<Node> pb;
 	
 	/** precondition */
-	final private ArrayList<Literal> pre;
+	final private Condition pre;
 
 
 	public PlanNode(String name){
-		super(name);
-		this.pb = new ArrayList<>();
-		this.pre = new ArrayList<>();
+		this(name, Condition.EMPTY);
 	}
 
-	public PlanNode(String name, ArrayList<Node> planbody, ArrayList<Literal> precondition) {
+	public PlanNode(String name, List<Literal> precondition){
+		this(name, new ArrayList<>(), precondition);
+	}
+
+	public PlanNode(String name, ArrayList<Node> planbody, List<Literal> precondition) {
 		super(name);
 		this.pb = planbody;
-		this.pre = precondition;
+		this.pre = Condition.of(precondition);
+	}
+
+	public PlanNode(long id, List<Literal> precondition) {
+		super(id);
+		this.pb = new ArrayList<>();
+		this.pre = Condition.of(precondition);
+	}
+
+	public PlanNode(long id){
+		this(id, Condition.EMPTY);
 	}
 
 	/** method to return the precondition of this plan */
-	public ArrayList<Literal> getPre()
+	public Condition getPre()
 	{
 		return this.pre;
 	}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2021 Yuan Yao
+ * University of Nottingham
+ * Zhejiang University of Technology
+ * Email: yaoyuan@zjut.edu.cn (yuanyao1990yy@icloud.com)
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details
+ *  <http://www.gnu.org/licenses/gpl-3.0.html>.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uno.gpt.structure;
+
+/**
+ * @version 1.0
+ *
+ * Derives the seeds of independent random streams, e.g. one per tree or per rollout, from a seed and an index, using
+ * the SplitMix64 finaliser so that neighbouring indexes give unrelated streams.
+ */
+public final class Seeds {
+
+	private Seeds() {
+	}
+
+	/**
+	 * @param seed the seed the streams are derived from
+	 * @param index the index of the stream
+	 * @return the seed of the stream
+	 */
+	public static long derive(long seed, int index) {
+		long z = seed * 0x9E3779B97F4A7C15L + index + 1;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+}
@@ -0,0 +1,278 @@
+/*
+ * Copyright 2021 Yuan Yao
+ * University of Nottingham
+ * Zhejiang University of Technology
+ * Email: yaoyuan@zjut.edu.cn (yuanyao1990yy@icloud.com)
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details
+ *  <http://www.gnu.org/licenses/gpl-3.0.html>.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uno.gpt.structure;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * @version 1.0
+ *
+ * The summary information of a node: the literals which must or may be required from outside the node when it is
+ * executed, and the literals which must or may hold once it has been executed successfully, computed bottom-up.
+ * <ul>
+ * <li>an action requires its precondition and brings about its postcondition;</li>
+ * <li>a plan requires its precondition and, for each step, what the step requires and the steps before it do not
+ * bring about: a must precondition of a step is a must precondition of the plan unless an earlier step may bring it
+ * about, a may precondition unless an earlier step must bring it about. Its effects are those of its steps, in
+ * order, a later step cancelling the must effects it may negate and the may effects it must negate;</li>
+ * <li>a goal must require and bring about what all of its plans must, may require and bring about what any of them
+ * may, and always brings about its goal-condition.</li>
+ * </ul>
+ * The conditions are conditions of the environment and their literals are in the order of the variables.
+ */
+public final class Summary {
+
+	/** the literals required from outside the node whichever way it is executed */
+	final private Condition mustPre;
+
+	/** the literals required from outside the node in some way it may be executed */
+	final private Condition mayPre;
+
+	/** the literals which hold after the node whichever way it is executed */
+	final private Condition mustEffect;
+
+	/** the literals which hold after the node in some way it may be executed */
+	final private Condition mayEffect;
+
+	public Summary(List<Literal> mustPre, List<Literal> mayPre, List<Literal> mustEffect, List<Literal> mayEffect) {
+		this.mustPre = Condition.of(mustPre);
+		this.mayPre = Condition.of(mayPre);
+		this.mustEffect = Condition.of(mustEffect);
+		this.mayEffect = Condition.of(mayEffect);
+	}
+
+	/** @return the literals required from outside the node whichever way it is executed */
+	public Condition getMustPre() {
+		return mustPre;
+	}
+
+	/** @return the literals required from outside the node in some way it may be executed */
+	public Condition getMayPre() {
+		return mayPre;
+	}
+
+	/** @return the literals which hold after the node whichever way it is executed */
+	public Condition getMustEffect() {
+		return mustEffect;
+	}
+
+	/** @return the literals which hold after the node in some way it may be executed */
+	public Condition getMayEffect() {
+		return mayEffect;
+	}
+
+	/**
+	 * compute the summary information of the nodes of a tree which do not have one yet, children first
+	 * @param root The top-level goal
+	 * @param environment The environment the literals of the tree come from
+	 * @return the summary information of the top-level goal
+	 */
+	public static Summary compute(GoalNode root, LiteralTable environment) {
+		// each entry is a goal or plan whose children are summarised first, then itself
+		ArrayDeque<Node> stack = new ArrayDeque<>();
+		ArrayDeque<Boolean> expanded = new ArrayDeque<>();
+		stack.push(root);
+		expanded.push(false);
+		while (!stack.isEmpty()) {
+			Node node = stack.peek();
+			if (node.getSummary() != null) {
+				stack.pop();
+				expanded.pop();
+				continue;
+			}
+			if (expanded.pop()) {
+				stack.pop();
+				Accumulator acc = node instanceof GoalNode
+						? new Accumulator((GoalNode) node, environment) : new Accumulator((PlanNode) node, environment);
+				for (Node child : children(node)) {
+					acc.add(child.getSummary());
+				}
+				node.setSummary(acc.summary());
+				continue;
+			}
+			expanded.push(true);
+			for (Node child : children(node)) {
+				if (!(child instanceof ActionNode) && child.getSummary() == null) {
+					stack.push(child);
+					expanded.push(false);
+				}
+			}
+		}
+		return root.getSummary();
+	}
+
+	/**
+	 * compute the summary information of the nodes of trees which do not have one yet, the trees in parallel
+	 * @param roots The top-level goals
+	 * @param environment The environment the literals of the trees come from
+	 * @param threads The number of threads
+	 */
+	public static void computeAll(List<GoalNode> roots, LiteralTable environment, int threads) {
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			pool.submit(() -> roots.parallelStream().forEach(root -> compute(root, environment))).join();
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	private static List<? extends Node> children(Node node) {
+		return node instanceof GoalNode ? ((GoalNode) node).getPlans() : ((PlanNode) node).getPlanBody();
+	}
+
+	/**
+	 * Folds the summary information of the children of a goal or a plan, in order, into the summary information of
+	 * the node, so that it can be computed while the children are produced one by one
+	 */
+	public static final class Accumulator {
+
+		/** the environment */
+		final private LiteralTable environment;
+
+		/** whether the node is a goal */
+		final private boolean goal;
+
+		/** the goal-condition of a goal */
+		final private Condition goalConds;
+
+		/** the sets of literals, by code: variable index * 2 + (1 if the literal is true) */
+		final private BitSet mustPre = new BitSet(), mayPre = new BitSet(), mustEffect = new BitSet(),
+				mayEffect = new BitSet();
+
+		/** the number of children folded */
+		private int count;
+
+		/**
+		 * @param goal The goal
+		 * @param environment The environment the literals of the goal come from
+		 */
+		public Accumulator(GoalNode goal, LiteralTable environment) {
+			this.environment = environment;
+			this.goal = true;
+			this.goalConds = goal.getGoalConds();
+		}
+
+		/**
+		 * @param plan The plan
+		 * @param environment The environment the literals of the plan come from
+		 */
+		public Accumulator(PlanNode plan, LiteralTable environment) {
+			this.environment = environment;
+			this.goal = false;
+			this.goalConds = null;
+			BitSet pre = codes(plan.getPre());
+			mustPre.or(pre);
+			mayPre.or(pre);
+		}
+
+		/**
+		 * fold the summary information of the next child
+		 * @param child The summary information of a plan of the goal, or of a step of the plan
+		 */
+		public void add(Summary child) {
+			BitSet childMustPre = codes(child.mustPre), childMayPre = codes(child.mayPre),
+					childMustEffect = codes(child.mustEffect), childMayEffect = codes(child.mayEffect);
+			if (goal) {
+				if (count == 0) {
+					mustPre.or(childMustPre);
+					mustEffect.or(childMustEffect);
+				}
+				else {
+					mustPre.and(childMustPre);
+					mustEffect.and(childMustEffect);
+				}
+				mayPre.or(childMayPre);
+				mayEffect.or(childMayEffect);
+			}
+			else {
+				childMustPre.andNot(mayEffect);
+				mustPre.or(childMustPre);
+				childMayPre.andNot(mustEffect);
+				mayPre.or(childMayPre);
+				mustEffect.andNot(negate(childMayEffect));
+				mustEffect.or(childMustEffect);
+				mayEffect.andNot(negate(childMustEffect));
+				mayEffect.or(childMayEffect);
+			}
+			count++;
+		}
+
+		/**
+		 * fold the summary information of the next step of a plan
+		 * @param action The action
+		 */
+		public void add(ActionNode action) {
+			add(action.getSummary());
+		}
+
+		/** @return the summary information of the node, from the children folded so far */
+		public Summary summary() {
+			BitSet mustEffect = this.mustEffect, mayEffect = this.mayEffect;
+			if (goal) {
+				BitSet gc = codes(goalConds), cancelled = negate(gc);
+				mustEffect = (BitSet) mustEffect.clone();
+				mustEffect.andNot(cancelled);
+				mustEffect.or(gc);
+				mayEffect = (BitSet) mayEffect.clone();
+				mayEffect.andNot(cancelled);
+				mayEffect.or(gc);
+			}
+			return new Summary(condition(mustPre), condition(mayPre), condition(mustEffect), condition(mayEffect));
+		}
+
+		private BitSet codes(Condition c) {
+			BitSet codes = new BitSet();
+			for (Literal l : c) {
+				int index = l.getIndex();
+				if (index < 0 || index >= environment.size() || environment.get(index, l.getState()) != l) {
+					index = environment.indexOf(l.getId());
+					if (index < 0) {
+						throw new IllegalArgumentException("Literal " + l.getId() + " is not in the environment");
+					}
+				}
+				codes.set(index << 1 | (l.getState() ? 1 : 0));
+			}
+			return codes;
+		}
+
+		/** @return the negations of a set of literals */
+		private static BitSet negate(BitSet codes) {
+			BitSet result = new BitSet();
+			for (int code = codes.nextSetBit(0); code >= 0; code = codes.nextSetBit(code + 1)) {
+				result.set(code ^ 1);
+			}
+			return result;
+		}
+
+		private Condition condition(BitSet codes) {
+			ArrayList<Literal> literals = new ArrayList<>(codes.cardinality());
+			for (int code = codes.nextSetBit(0); code >= 0; code = codes.nextSetBit(code + 1)) {
+				literals.add(environment.get(code >>> 1, (code & 1) == 1));
+			}
+			return environment.condition(literals);
+		}
+	}
+}